@@ -1,66 +1,2023 @@
 import javax.swing.*;
 import java.awt.*;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
 
-public class GrafoPrecedencia extends JPanel {
-    private Map<String, Boolean> ejecutado;
-    private Map<String, Point> posiciones;
-    private Map<String, String> operaciones;
-
-    // Variables compartidas
-    private volatile int a, b = 1, c = 2, d = 3, e, f = 4, g = 5, h, i = 6, j = 7;
-    private int t_a, t_b = 1, t_c = 2, t_d = 3, t_e, t_f = 4, t_g = 5, t_h, t_i = 6, t_j = 7;
-    private final Object lock = new Object();
-
-    public GrafoPrecedencia() {
-        ejecutado = new HashMap<>();
-        posiciones = new HashMap<>();
-        operaciones = new HashMap<>();
-        inicializarPosiciones();
-        inicializarOperaciones();
-
-        setPreferredSize(new Dimension(600, 400));
-        setBackground(Color.WHITE);
-    }
-
-    private void inicializarPosiciones() {
-        posiciones.put("S1", new Point(150, 100));
-        posiciones.put("S2", new Point(250, 200));
-        posiciones.put("S3", new Point(350, 100));
-        posiciones.put("S4", new Point(350, 200));
-        posiciones.put("S5", new Point(50, 200));
-    }
-
-    private void inicializarOperaciones() {
-        operaciones.put("S1", "a = b + c");
-        operaciones.put("S2", "b = a + d");
-        operaciones.put("S3", "e = c + f");
-        operaciones.put("S4", "c = e + g");
-        operaciones.put("S5", "h = i + j");
-    }
-
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                RenderingHints.VALUE_ANTIALIAS_ON);
-
-        synchronized (lock) {
-            // Dibujar dependencias
-            g2d.setStroke(new BasicStroke(2));
-            g2d.setColor(Color.BLUE);
-            drawArrow(g2d, "S1", "S2");
-            drawArrow(g2d, "S3", "S4");
+// El modelo (definición, análisis, ejecución y variables) no depende de AWT:
+// con --sin-ventana el grafo se ejecuta sin cargar ninguna clase gráfica, y
+// la ventana (VistaGrafo) solo lee instantáneas inmutables del estado.
+public class GrafoPrecedencia {
+    // Grafo de la demostración; con un archivo como argumento se usa ese
+    static final String GRAFO_EJEMPLO = String.join("\n",
+            "valores: a=0, b=1, c=2, d=3, e=0, f=4, g=5, h=0, i=6, j=7",
+            "S1: a = b + c at 150,100",
+            "S2: b = a + d after S1 at 250,200",
+            "S3: e = c + f at 350,100",
+            "S4: c = e + g after S3 at 350,200",
+            "S5: h = i + j at 50,200");
+    static final long DURACION_TAREA_MS = 2000;
+    // Con más tareas no se imprime una línea por tarea ejecutada
+    static final int MAX_LINEAS_EJECUCION = 100;
+
+    private final DefinicionGrafo definicion;
+    private final AnalisisBernstein analisis;
+    private final long[] costos; // costo de cada tarea en ms ("cost" o DURACION_TAREA_MS)
+    private final long[] duraciones; // duración medida de cada tarea en µs
+    private final int[] resultados; // valor que asignó cada tarea
+    // 1 cuando la tarea publicó su resultado; la escritura volátil publica
+    // también resultados[t]
+    private final AtomicIntegerArray ejecutado;
+    private final AtomicInteger terminadas = new AtomicInteger();
+
+    // Variables compartidas, por índice de variable
+    private final AlmacenVariables variables;
+    // Se crea con los resultados de la primera ejecución completa
+    private volatile boolean ejecucionCompleta;
+    private EjecucionIncremental incremental;
+
+    // Cambio de valores iniciales, escrito como "f=5,j=1"
+    static final class Cambio {
+        final String texto;
+        final int[] variables;
+        final int[] valores;
+
+        private Cambio(String texto, int[] variables, int[] valores) {
+            this.texto = texto;
+            this.variables = variables;
+            this.valores = valores;
+        }
+
+        static Cambio leer(DefinicionGrafo definicion, String texto) {
+            String[] asignaciones = texto.split(",");
+            int[] variables = new int[asignaciones.length];
+            int[] valores = new int[asignaciones.length];
+            for (int i = 0; i < asignaciones.length; i++) {
+                String[] partes = asignaciones[i].split("=");
+                if (partes.length != 2) {
+                    throw new IllegalArgumentException("se esperaba variable=valor en '" + asignaciones[i] + "'");
+                }
+                variables[i] = definicion.buscarVariable(partes[0].trim());
+                if (variables[i] < 0) {
+                    throw new IllegalArgumentException("variable desconocida '" + partes[0].trim() + "'");
+                }
+                try {
+                    valores[i] = Integer.parseInt(partes[1].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("valor inválido '" + partes[1].trim() + "'");
+                }
+            }
+            return new Cambio(texto, variables, valores);
+        }
+    }
+
+    // Grafo dirigido acíclico de tareas: cada nodo tiene un trabajo y una
+    // arista desde -> hasta indica que hasta no puede empezar antes de que
+    // termine desde. Nodos y aristas se guardan en arreglos de int que crecen
+    // al agregar, y antes de ejecutar se compactan los sucesores de cada nodo
+    // en un solo arreglo (como una matriz dispersa por filas), así que un
+    // grafo de cientos de miles de nodos no crea un objeto por arista.
+    static final class GrafoTareas {
+        private String[] nombres = new String[16];
+        private Runnable[] trabajos = new Runnable[16];
+        private int nodos;
+        private int[] origenes = new int[16];
+        private int[] destinos = new int[16];
+        private int aristas;
+
+        // Sucesores del nodo i: sucesores[inicioSucesores[i] .. inicioSucesores[i + 1])
+        private int[] inicioSucesores;
+        private int[] sucesores;
+        private int[] dependencias; // aristas de entrada de cada nodo
+
+        int agregarNodo(String nombre, Runnable trabajo) {
+            if (nodos == nombres.length) {
+                nombres = Arrays.copyOf(nombres, nodos * 2);
+                trabajos = Arrays.copyOf(trabajos, nodos * 2);
+            }
+            nombres[nodos] = nombre;
+            trabajos[nodos] = trabajo;
+            sucesores = null;
+            return nodos++;
+        }
+
+        void agregarArista(int desde, int hasta) {
+            if (desde < 0 || desde >= nodos || hasta < 0 || hasta >= nodos) {
+                throw new IllegalArgumentException("Arista con un nodo inexistente: " + desde + " -> " + hasta);
+            }
+            if (aristas == origenes.length) {
+                origenes = Arrays.copyOf(origenes, aristas * 2);
+                destinos = Arrays.copyOf(destinos, aristas * 2);
+            }
+            origenes[aristas] = desde;
+            destinos[aristas++] = hasta;
+            sucesores = null;
+        }
+
+        int nodos() {
+            return nodos;
+        }
+
+        int aristas() {
+            return aristas;
+        }
+
+        String nombre(int nodo) {
+            return nombres[nodo];
+        }
+
+        Runnable trabajo(int nodo) {
+            return trabajos[nodo];
+        }
+
+        // Agrupa las aristas por origen y comprueba que no haya ciclos (un
+        // ciclo dejaría nodos esperando para siempre)
+        void compactar() {
+            if (sucesores != null) {
+                return;
+            }
+            int[] inicio = new int[nodos + 1];
+            int[] entrada = new int[nodos];
+            for (int k = 0; k < aristas; k++) {
+                inicio[origenes[k] + 1]++;
+                entrada[destinos[k]]++;
+            }
+            for (int i = 0; i < nodos; i++) {
+                inicio[i + 1] += inicio[i];
+            }
+            int[] siguiente = Arrays.copyOf(inicio, nodos);
+            int[] lista = new int[aristas];
+            for (int k = 0; k < aristas; k++) {
+                lista[siguiente[origenes[k]]++] = destinos[k];
+            }
+
+            // Orden topológico de Kahn solo para contar los nodos alcanzables
+            int[] pendientes = entrada.clone();
+            int[] cola = new int[nodos];
+            int fin = 0;
+            for (int i = 0; i < nodos; i++) {
+                if (pendientes[i] == 0) {
+                    cola[fin++] = i;
+                }
+            }
+            for (int k = 0; k < fin; k++) {
+                for (int j = inicio[cola[k]]; j < inicio[cola[k] + 1]; j++) {
+                    if (--pendientes[lista[j]] == 0) {
+                        cola[fin++] = lista[j];
+                    }
+                }
+            }
+            if (fin < nodos) {
+                throw new IllegalArgumentException("El grafo tiene un ciclo: " + (nodos - fin)
+                        + " nodos no pueden empezar nunca");
+            }
+            inicioSucesores = inicio;
+            dependencias = entrada;
+            sucesores = lista;
+        }
+    }
+
+    // Ejecuta grafos de tareas en un pool de hilos de tamaño fijo. Cada nodo
+    // lleva un contador atómico de dependencias pendientes: el hilo que
+    // termina un nodo descuenta a sus sucesores y envía al pool los que
+    // llegan a cero. Ningún hilo del pool espera a otro con join(), así que
+    // un grafo de cualquier tamaño corre en tantos hilos como tenga el pool.
+    // Si un trabajo falla, los nodos que faltan se dan por terminados sin
+    // ejecutarse y el resultado termina con ese error.
+    // Las tareas listas esperan en una cola con prioridad: con prioridades
+    // (p. ej. el nivel inferior del camino crítico) sale primero la mayor; a
+    // igual prioridad, o sin ellas, en orden de llegada.
+    static final class EjecutorGrafo implements AutoCloseable {
+        private final ThreadPoolExecutor pool;
+        private final int hilos;
+        private final AtomicLong llegadas = new AtomicLong();
+
+        EjecutorGrafo(int hilos) {
+            AtomicInteger numero = new AtomicInteger();
+            this.hilos = hilos;
+            this.pool = new ThreadPoolExecutor(hilos, hilos, 0, TimeUnit.MILLISECONDS,
+                    new PriorityBlockingQueue<>(), trabajo -> new HiloGrafo(trabajo, numero.incrementAndGet()));
+        }
+
+        // Hilo del pool, numerado desde 1 para la traza
+        static final class HiloGrafo extends Thread {
+            final int numero;
+
+            HiloGrafo(Runnable trabajo, int numero) {
+                super(trabajo, "GRAFO-" + numero);
+                this.numero = numero;
+                setDaemon(true);
+            }
+        }
+
+        CompletableFuture<Void> ejecutar(GrafoTareas grafo) {
+            return ejecutar(grafo, null, null);
+        }
+
+        // prioridades: una por nodo, o null para orden de llegada;
+        // traza: la que registra la ejecución, o null
+        CompletableFuture<Void> ejecutar(GrafoTareas grafo, long[] prioridades, TrazaEjecucion traza) {
+            grafo.compactar();
+            return new Ejecucion(grafo, prioridades, traza).iniciar();
+        }
+
+        // Nodo listo en la cola del pool
+        private static final class NodoListo implements Runnable, Comparable<NodoListo> {
+            private final Ejecucion ejecucion;
+            private final int nodo;
+            private final long prioridad;
+            private final long llegada;
+
+            NodoListo(Ejecucion ejecucion, int nodo, long prioridad, long llegada) {
+                this.ejecucion = ejecucion;
+                this.nodo = nodo;
+                this.prioridad = prioridad;
+                this.llegada = llegada;
+            }
+
+            @Override
+            public void run() {
+                ejecucion.ejecutarNodo(nodo);
+            }
+
+            @Override
+            public int compareTo(NodoListo otro) {
+                if (prioridad != otro.prioridad) {
+                    return Long.compare(otro.prioridad, prioridad);
+                }
+                return Long.compare(llegada, otro.llegada);
+            }
+        }
+
+        @Override
+        public void close() {
+            pool.shutdown();
+        }
+
+        // Estado de una ejecución del grafo
+        private final class Ejecucion {
+            private final GrafoTareas grafo;
+            private final long[] prioridades;
+            private final TrazaEjecucion traza;
+            private final AtomicIntegerArray pendientes;
+            private final AtomicInteger restantes;
+            private final AtomicReference<Throwable> fallo = new AtomicReference<>();
+            private final CompletableFuture<Void> resultado = new CompletableFuture<>();
+
+            Ejecucion(GrafoTareas grafo, long[] prioridades, TrazaEjecucion traza) {
+                this.grafo = grafo;
+                this.prioridades = prioridades;
+                this.traza = traza;
+                this.pendientes = new AtomicIntegerArray(grafo.dependencias);
+                this.restantes = new AtomicInteger(grafo.nodos());
+            }
+
+            CompletableFuture<Void> iniciar() {
+                if (traza != null) {
+                    traza.empezar(hilos);
+                }
+                if (grafo.nodos() == 0) {
+                    resultado.complete(null);
+                }
+                for (int i = 0; i < grafo.nodos(); i++) {
+                    if (grafo.dependencias[i] == 0) {
+                        enviar(i);
+                    }
+                }
+                return resultado;
+            }
+
+            private void enviar(int nodo) {
+                if (traza != null) {
+                    traza.listo(nodo);
+                }
+                pool.execute(new NodoListo(this, nodo, prioridades != null ? prioridades[nodo] : 0,
+                        llegadas.getAndIncrement()));
+            }
+
+            private void ejecutarNodo(int nodo) {
+                if (traza != null) {
+                    traza.inicio(nodo);
+                }
+                if (fallo.get() == null) {
+                    try {
+                        grafo.trabajos[nodo].run();
+                    } catch (Throwable e) {
+                        fallo.compareAndSet(null, e);
+                    }
+                }
+                if (traza != null) {
+                    traza.fin(nodo);
+                }
+                for (int k = grafo.inicioSucesores[nodo]; k < grafo.inicioSucesores[nodo + 1]; k++) {
+                    int sucesor = grafo.sucesores[k];
+                    if (pendientes.decrementAndGet(sucesor) == 0) {
+                        enviar(sucesor);
+                    }
+                }
+                if (restantes.decrementAndGet() == 0) {
+                    if (fallo.get() != null) {
+                        resultado.completeExceptionally(fallo.get());
+                    } else {
+                        resultado.complete(null);
+                    }
+                }
+            }
+        }
+    }
+
+    // Traza de una ejecución de EjecutorGrafo: para cada nodo, cuándo quedó
+    // listo (entró a la cola), cuándo empezó, cuándo terminó y en qué hilo
+    // del pool. Cada nodo escribe solo sus propias posiciones en arreglos
+    // primitivos, sin cerrojos; se leen cuando terminó la ejecución.
+    // Los tiempos son en nanosegundos desde el inicio de la ejecución.
+    static final class TrazaEjecucion {
+        private final GrafoTareas grafo;
+        private final long[] listo;
+        private final long[] inicio;
+        private final long[] fin;
+        private final int[] hilo;
+        private int hilos;
+        private long origen;
+
+        TrazaEjecucion(GrafoTareas grafo) {
+            this.grafo = grafo;
+            this.listo = new long[grafo.nodos()];
+            this.inicio = new long[grafo.nodos()];
+            this.fin = new long[grafo.nodos()];
+            this.hilo = new int[grafo.nodos()];
+        }
+
+        void empezar(int hilos) {
+            this.hilos = hilos;
+            this.origen = System.nanoTime();
+        }
+
+        void listo(int nodo) {
+            listo[nodo] = System.nanoTime() - origen;
+        }
+
+        void inicio(int nodo) {
+            inicio[nodo] = System.nanoTime() - origen;
+            hilo[nodo] = ((EjecutorGrafo.HiloGrafo) Thread.currentThread()).numero;
+        }
+
+        void fin(int nodo) {
+            fin[nodo] = System.nanoTime() - origen;
+        }
+
+        // Formato trace_event de Chrome (chrome://tracing, Perfetto): un
+        // evento completo por nodo en la fila de su hilo y, en la fila
+        // "cola", la espera de cada nodo desde que quedó listo hasta que
+        // empezó, como evento asíncrono porque las esperas se solapan
+        void escribirChrome(String archivo) throws IOException {
+            try (BufferedWriter salida = new BufferedWriter(new FileWriter(archivo, StandardCharsets.UTF_8))) {
+                salida.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+                salida.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":\"EjecutorGrafo\"}},\n");
+                salida.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":0,\"args\":{\"name\":\"cola\"}}");
+                for (int h = 1; h <= hilos; h++) {
+                    salida.write(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + h
+                            + ",\"args\":{\"name\":\"GRAFO-" + h + "\"}}");
+                }
+                StringBuilder evento = new StringBuilder(256);
+                for (int n = 0; n < grafo.nodos(); n++) {
+                    String nombre = json(grafo.nombre(n));
+                    evento.setLength(0);
+                    evento.append(",\n{\"name\":\"").append(nombre).append("\",\"cat\":\"tarea\",\"ph\":\"X\",\"pid\":1,\"tid\":")
+                            .append(hilo[n]).append(",\"ts\":");
+                    microsegundos(evento, inicio[n]).append(",\"dur\":");
+                    microsegundos(evento, fin[n] - inicio[n]).append(",\"args\":{\"espera_us\":");
+                    microsegundos(evento, inicio[n] - listo[n]).append("}}");
+                    evento.append(",\n{\"name\":\"").append(nombre).append("\",\"cat\":\"espera\",\"ph\":\"b\",\"id\":")
+                            .append(n).append(",\"pid\":1,\"tid\":0,\"ts\":");
+                    microsegundos(evento, listo[n]).append('}');
+                    evento.append(",\n{\"name\":\"").append(nombre).append("\",\"cat\":\"espera\",\"ph\":\"e\",\"id\":")
+                            .append(n).append(",\"pid\":1,\"tid\":0,\"ts\":");
+                    microsegundos(evento, inicio[n]).append('}');
+                    salida.append(evento);
+                }
+                salida.write("\n]}\n");
+            }
+        }
+
+        // Una fila por nodo con la espera en cola y el tiempo de ejecución
+        void escribirCsv(String archivo) throws IOException {
+            try (BufferedWriter salida = new BufferedWriter(new FileWriter(archivo, StandardCharsets.UTF_8))) {
+                salida.write("tarea,hilo,listo_us,inicio_us,fin_us,espera_us,ejecucion_us\n");
+                StringBuilder fila = new StringBuilder(128);
+                for (int n = 0; n < grafo.nodos(); n++) {
+                    fila.setLength(0);
+                    fila.append(grafo.nombre(n)).append(',').append(hilo[n]).append(',');
+                    microsegundos(fila, listo[n]).append(',');
+                    microsegundos(fila, inicio[n]).append(',');
+                    microsegundos(fila, fin[n]).append(',');
+                    microsegundos(fila, inicio[n] - listo[n]).append(',');
+                    microsegundos(fila, fin[n] - inicio[n]).append('\n');
+                    salida.append(fila);
+                }
+            }
+        }
+
+        // Resumen de la traza. Recorre los eventos en orden de tiempo
+        // contando tareas en cola y en ejecución, para separar el tiempo en
+        // que algún hilo estuvo libre por falta de tareas listas
+        // (dependencias) del tiempo en que estuvo libre habiendo tareas en
+        // cola (retraso del planificador).
+        String informe() {
+            int nodos = grafo.nodos();
+            if (nodos == 0) {
+                return "Traza vacía" + System.lineSeparator();
+            }
+            // Tiempo y tipo en un solo long para ordenar sin objetos:
+            // 0 = empieza, 1 = termina, 2 = queda listo
+            long[] eventos = new long[3 * nodos];
+            long duracion = 0;
+            long ejecucion = 0;
+            long[] esperas = new long[nodos];
+            for (int n = 0; n < nodos; n++) {
+                eventos[3 * n] = inicio[n] << 2;
+                eventos[3 * n + 1] = fin[n] << 2 | 1;
+                eventos[3 * n + 2] = listo[n] << 2 | 2;
+                duracion = Math.max(duracion, fin[n]);
+                ejecucion += fin[n] - inicio[n];
+                esperas[n] = inicio[n] - listo[n];
+            }
+            Arrays.sort(eventos);
+            Arrays.sort(esperas);
+            long sinListas = 0; // hilo libre (capacidad) por falta de tareas listas
+            long conCola = 0; // hilo libre con tareas en cola
+            int enCola = 0;
+            int enEjecucion = 0;
+            long anterior = 0;
+            for (long evento : eventos) {
+                long tiempo = evento >>> 2;
+                long libres = Math.max(0, hilos - enEjecucion);
+                if (enCola > 0) {
+                    conCola += (tiempo - anterior) * Math.min(libres, enCola);
+                    sinListas += (tiempo - anterior) * Math.max(0, libres - enCola);
+                } else {
+                    sinListas += (tiempo - anterior) * libres;
+                }
+                anterior = tiempo;
+                switch ((int) (evento & 3)) {
+                    case 0:
+                        enCola--;
+                        enEjecucion++;
+                        break;
+                    case 1:
+                        enEjecucion--;
+                        break;
+                    default:
+                        enCola++;
+                        break;
+                }
+            }
+            long capacidad = duracion * hilos;
+            String fin = System.lineSeparator();
+            return String.format("Traza: %d tareas en %.1f ms con %d hilos, paralelismo medio %.2f%n",
+                    nodos, duracion / 1e6, hilos, (double) ejecucion / duracion)
+                    + String.format("Espera en cola: mediana %.1f µs, p99 %.1f µs, máxima %.1f µs%n",
+                            esperas[nodos / 2] / 1e3, esperas[(int) Math.min(nodos - 1, nodos * 99L / 100)] / 1e3,
+                            esperas[nodos - 1] / 1e3)
+                    + String.format("Hilos libres: %.1f%% sin tareas listas, %.1f%% con tareas en cola",
+                            sinListas * 100.0 / capacidad, conCola * 100.0 / capacidad)
+                    + fin;
+        }
+
+        private static StringBuilder microsegundos(StringBuilder texto, long nanos) {
+            texto.append(nanos / 1000).append('.');
+            long resto = nanos % 1000;
+            if (resto < 100) {
+                texto.append('0');
+            }
+            if (resto < 10) {
+                texto.append('0');
+            }
+            return texto.append(resto);
+        }
+
+        private static String json(String texto) {
+            return texto.replace("\\", "\\\\").replace("\"", "\\\"");
+        }
+    }
+
+    // Variables compartidas de las tareas, sin cerrojos. Cada variable es
+    // una celda versionada: un long con la versión en los 32 bits altos y el
+    // valor en los bajos, que se lee y se escribe de una sola vez con
+    // operaciones atómicas. Las tareas que el análisis de Bernstein deja en
+    // paralelo no tocan las mismas variables, así que sus lecturas y
+    // escrituras nunca compiten.
+    // Con pocas variables, cada celda ocupa su propia línea de caché para
+    // que escribir una variable no invalide las vecinas en los otros
+    // núcleos: ahí es probable que dos tareas en paralelo escriban variables
+    // contiguas. Con muchas, el relleno sacaría el almacén de la caché de
+    // primer nivel y las lecturas costarían más de lo que se ahorra (con
+    // 2000 variables, un 20% más lento en un núcleo), así que van juntas.
+    static final class AlmacenVariables {
+        private static final int LINEA = 8; // longs por línea de caché de 64 bytes
+        private static final int MAX_VARIABLES_SEPARADAS = 512; // 32 KB con relleno
+        private final AtomicLongArray celdas;
+        private final int variables;
+        private final int celda; // posiciones del arreglo por variable
+
+        AlmacenVariables(DefinicionGrafo definicion) {
+            this.variables = definicion.variables();
+            this.celda = variables <= MAX_VARIABLES_SEPARADAS ? LINEA : 1;
+            this.celdas = new AtomicLongArray(variables * celda);
+            for (int k = 0; k < variables; k++) {
+                celdas.set(k * celda, celda(0, definicion.valorInicial(k)));
+            }
+        }
+
+        private static long celda(int version, int valor) {
+            return (long) version << 32 | (valor & 0xFFFFFFFFL);
+        }
+
+        int variables() {
+            return variables;
+        }
+
+        int leer(int variable) {
+            return (int) celdas.get(variable * celda);
+        }
+
+        void escribir(int variable, int valor) {
+            int posicion = variable * celda;
+            long actual;
+            do {
+                actual = celdas.get(posicion);
+            } while (!celdas.compareAndSet(posicion, actual, celda((int) (actual >>> 32) + 1, valor)));
+        }
+
+        // Valores de todas las variables en un mismo instante: se leen todas
+        // dos veces y, si ninguna versión cambió entre ambas lecturas, la
+        // primera es una foto consistente. Tras varios intentos con
+        // escrituras en curso se devuelve la última lectura, que puede
+        // mezclar instantes cercanos.
+        int[] instantanea() {
+            long[] primera = new long[variables];
+            int[] valores = new int[variables];
+            for (int intento = 0; ; intento++) {
+                for (int k = 0; k < variables; k++) {
+                    primera[k] = celdas.get(k * celda);
+                }
+                boolean estable = true;
+                for (int k = 0; k < variables && estable; k++) {
+                    estable = celdas.get(k * celda) == primera[k];
+                }
+                if (estable || intento == 8) {
+                    for (int k = 0; k < variables; k++) {
+                        valores[k] = (int) primera[k];
+                    }
+                    return valores;
+                }
+            }
+        }
+    }
+
+    // Definición declarativa de un grafo de asignaciones, una línea por tarea:
+    //
+    //   # comentario
+    //   valores: b=1, c=2, d=3
+    //   S1: a = b + c at 150,100
+    //   S2: b = a + d after S1
+    //
+    // La expresión admite variables, enteros y los operadores + - * (el
+    // producto primero). "after" agrega dependencias explícitas con tareas ya
+    // declaradas, "at" fija la posición del nodo en la ventana y "cost" su
+    // costo estimado en milisegundos. Las variables sin valor inicial
+    // empiezan en 0.
+    // Además de las dependencias explícitas, se infieren las de datos
+    // recorriendo las tareas en el orden del archivo, que es el orden
+    // secuencial del programa:
+    //  - lectura después de escritura (RAW): lee una variable que escribió
+    //    una tarea anterior;
+    //  - escritura después de lectura (WAR): escribe una variable que leyó
+    //    una tarea anterior desde su última escritura;
+    //  - escritura después de escritura (WAW): escribe una variable que ya
+    //    escribió una tarea anterior.
+    // El archivo se lee línea a línea y todo se guarda en arreglos de int, así
+    // que la memoria es proporcional a nodos + aristas.
+    static final class DefinicionGrafo {
+        static final byte RAW = 1, WAR = 2, WAW = 4, DECLARADA = 8;
+        static final int SIN_POSICION = Integer.MIN_VALUE;
+
+        // Variables
+        private final Map<String, Integer> indiceVariable = new HashMap<>();
+        private String[] variables = new String[16];
+        private int[] valoresIniciales = new int[16];
+        private int numVariables;
+
+        // Tareas; los operandos de la tarea i son operandos[inicioOperandos[i]
+        // .. inicioOperandos[i + 1]): un índice de variable, o -(k + 1) para
+        // el entero literales[k]. operadores tiene el signo previo de cada uno.
+        private final Map<String, Integer> indiceTarea = new HashMap<>();
+        private String[] nombres = new String[16];
+        private String[] textos = new String[16];
+        private int[] destinos = new int[16];
+        private int[] inicioOperandos = new int[17];
+        private int[] x = new int[16];
+        private int[] y = new int[16];
+        private long[] costos = new long[16]; // -1 si no se indicó
+        private int numTareas;
+        private int[] operandos = new int[32];
+        private char[] operadores = new char[32];
+        private int numOperandos;
+        private int[] literales = new int[16];
+        private int numLiterales;
+
+        // Aristas, con los tipos de dependencia que las justifican
+        private int[] origenes = new int[16];
+        private int[] finales = new int[16];
+        private byte[] tipos = new byte[16];
+        private int numAristas;
+
+        // Estado de la inferencia: última tarea que escribió cada variable y
+        // lectores desde entonces, como listas enlazadas en arreglos
+        private int[] ultimoEscritor = new int[16];
+        private int[] primerLector = new int[16];
+        private int[] lectorTarea = new int[16];
+        private int[] lectorSiguiente = new int[16];
+        private int numLectores;
+        // Arista ya creada hacia la tarea actual desde cada predecesora
+        private int[] marcaTarea = new int[16];
+        private int[] marcaArista = new int[16];
+
+        static DefinicionGrafo cargar(Reader fuente) throws IOException {
+            DefinicionGrafo definicion = new DefinicionGrafo();
+            BufferedReader lector = new BufferedReader(fuente);
+            String linea;
+            int numero = 0;
+            while ((linea = lector.readLine()) != null) {
+                numero++;
+                int comentario = linea.indexOf('#');
+                if (comentario >= 0) {
+                    linea = linea.substring(0, comentario);
+                }
+                if (linea.isBlank()) {
+                    continue;
+                }
+                try {
+                    definicion.agregarLinea(new Lexico(linea));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Línea " + numero + ": " + e.getMessage());
+                }
+            }
+            return definicion;
+        }
+
+        static DefinicionGrafo cargar(String archivo) throws IOException {
+            try (Reader fuente = new FileReader(archivo)) {
+                return cargar(fuente);
+            }
+        }
+
+        // Separa una línea en identificadores, enteros y símbolos
+        private static final class Lexico {
+            private final String linea;
+            private int posicion;
+
+            Lexico(String linea) {
+                this.linea = linea;
+            }
+
+            // Siguiente símbolo, o null al final de la línea
+            String siguiente() {
+                while (posicion < linea.length() && Character.isWhitespace(linea.charAt(posicion))) {
+                    posicion++;
+                }
+                if (posicion == linea.length()) {
+                    return null;
+                }
+                int inicio = posicion;
+                char caracter = linea.charAt(posicion);
+                if (Character.isLetterOrDigit(caracter) || caracter == '_') {
+                    while (posicion < linea.length()
+                            && (Character.isLetterOrDigit(linea.charAt(posicion)) || linea.charAt(posicion) == '_')) {
+                        posicion++;
+                    }
+                } else {
+                    posicion++;
+                }
+                return linea.substring(inicio, posicion);
+            }
+
+            String esperar(String descripcion) {
+                String simbolo = siguiente();
+                if (simbolo == null) {
+                    throw new IllegalArgumentException("falta " + descripcion);
+                }
+                return simbolo;
+            }
+
+            void esperarSimbolo(String esperado) {
+                String simbolo = siguiente();
+                if (!esperado.equals(simbolo)) {
+                    throw new IllegalArgumentException("se esperaba '" + esperado + "' y no '" + simbolo + "'");
+                }
+            }
+        }
+
+        private static boolean esIdentificador(String simbolo) {
+            return simbolo != null && (Character.isLetter(simbolo.charAt(0)) || simbolo.charAt(0) == '_');
+        }
+
+        private static int entero(String simbolo) {
+            try {
+                return Integer.parseInt(simbolo);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("'" + simbolo + "' no es un entero");
+            }
+        }
+
+        private void agregarLinea(Lexico lexico) {
+            String nombre = lexico.siguiente();
+            if (!esIdentificador(nombre)) {
+                throw new IllegalArgumentException("se esperaba el nombre de una tarea");
+            }
+            lexico.esperarSimbolo(":");
+            if (nombre.equals("valores")) {
+                agregarValores(lexico);
+            } else {
+                agregarTarea(nombre, lexico);
+            }
+        }
+
+        // valores: a=1, b=2, ...
+        private void agregarValores(Lexico lexico) {
+            String simbolo = lexico.siguiente();
+            while (simbolo != null) {
+                if (!esIdentificador(simbolo)) {
+                    throw new IllegalArgumentException("se esperaba una variable y no '" + simbolo + "'");
+                }
+                int variable = variable(simbolo);
+                lexico.esperarSimbolo("=");
+                String valor = lexico.esperar("el valor de " + simbolo);
+                valoresIniciales[variable] = valor.equals("-") ? -entero(lexico.esperar("un entero")) : entero(valor);
+                simbolo = lexico.siguiente();
+                if (",".equals(simbolo)) {
+                    simbolo = lexico.siguiente();
+                }
+            }
+        }
+
+        private void agregarTarea(String nombre, Lexico lexico) {
+            if (indiceTarea.containsKey(nombre)) {
+                throw new IllegalArgumentException("la tarea " + nombre + " ya existe");
+            }
+            String simbolo = lexico.esperar("la variable asignada");
+            if (!esIdentificador(simbolo)) {
+                throw new IllegalArgumentException("se esperaba la variable asignada");
+            }
+            int destino = variable(simbolo);
+            StringBuilder texto = new StringBuilder(simbolo).append(" =");
+            lexico.esperarSimbolo("=");
+
+            // Expresión: operando (operador operando)*
+            int tarea = numTareas;
+            crecerTareas();
+            char operador = '+';
+            while (true) {
+                String operando = lexico.esperar("un operando");
+                texto.append(' ').append(operando);
+                agregarOperando(operador, esIdentificador(operando) ? variable(operando) : -(literal(entero(operando)) + 1));
+                simbolo = lexico.siguiente();
+                if (simbolo == null || !(simbolo.equals("+") || simbolo.equals("-") || simbolo.equals("*"))) {
+                    break;
+                }
+                operador = simbolo.charAt(0);
+                texto.append(' ').append(operador);
+            }
+
+            nombres[tarea] = nombre;
+            textos[tarea] = texto.toString();
+            destinos[tarea] = destino;
+            x[tarea] = SIN_POSICION;
+            y[tarea] = SIN_POSICION;
+            costos[tarea] = -1;
+            numTareas++;
+            inicioOperandos[numTareas] = numOperandos;
+            indiceTarea.put(nombre, tarea);
+
+            // Cláusulas opcionales
+            while (simbolo != null) {
+                if (simbolo.equals("after")) {
+                    do {
+                        String previa = lexico.esperar("una tarea en after");
+                        Integer desde = indiceTarea.get(previa);
+                        if (desde == null || desde == tarea) {
+                            throw new IllegalArgumentException("after " + previa + ": la tarea no está declarada antes");
+                        }
+                        agregarArista(desde, tarea, DECLARADA);
+                        simbolo = lexico.siguiente();
+                    } while (",".equals(simbolo));
+                } else if (simbolo.equals("at")) {
+                    x[tarea] = entero(lexico.esperar("la coordenada x"));
+                    lexico.esperarSimbolo(",");
+                    y[tarea] = entero(lexico.esperar("la coordenada y"));
+                    simbolo = lexico.siguiente();
+                } else if (simbolo.equals("cost")) {
+                    costos[tarea] = entero(lexico.esperar("el costo"));
+                    if (costos[tarea] < 0) {
+                        throw new IllegalArgumentException("el costo no puede ser negativo");
+                    }
+                    simbolo = lexico.siguiente();
+                } else {
+                    throw new IllegalArgumentException("no se esperaba '" + simbolo + "'");
+                }
+            }
+            inferirDependencias(tarea);
+        }
+
+        private void inferirDependencias(int tarea) {
+            int destino = destinos[tarea];
+            for (int k = inicioOperandos[tarea]; k < inicioOperandos[tarea + 1]; k++) {
+                int variable = operandos[k];
+                if (variable >= 0 && ultimoEscritor[variable] >= 0) {
+                    agregarArista(ultimoEscritor[variable], tarea, RAW);
+                }
+            }
+            if (ultimoEscritor[destino] >= 0) {
+                agregarArista(ultimoEscritor[destino], tarea, WAW);
+            }
+            for (int l = primerLector[destino]; l >= 0; l = lectorSiguiente[l]) {
+                if (lectorTarea[l] != tarea) {
+                    agregarArista(lectorTarea[l], tarea, WAR);
+                }
+            }
+            // La escritura reinicia los lectores de la variable
+            primerLector[destino] = -1;
+            for (int k = inicioOperandos[tarea]; k < inicioOperandos[tarea + 1]; k++) {
+                int variable = operandos[k];
+                if (variable >= 0 && variable != destino
+                        && (primerLector[variable] < 0 || lectorTarea[primerLector[variable]] != tarea)) {
+                    if (numLectores == lectorTarea.length) {
+                        lectorTarea = Arrays.copyOf(lectorTarea, numLectores * 2);
+                        lectorSiguiente = Arrays.copyOf(lectorSiguiente, numLectores * 2);
+                    }
+                    lectorTarea[numLectores] = tarea;
+                    lectorSiguiente[numLectores] = primerLector[variable];
+                    primerLector[variable] = numLectores++;
+                }
+            }
+            ultimoEscritor[destino] = tarea;
+        }
+
+        // Una sola arista por par de tareas, con todos sus tipos
+        private void agregarArista(int desde, int hasta, byte tipo) {
+            if (marcaTarea[desde] == hasta + 1) {
+                tipos[marcaArista[desde]] |= tipo;
+                return;
+            }
+            if (numAristas == origenes.length) {
+                origenes = Arrays.copyOf(origenes, numAristas * 2);
+                finales = Arrays.copyOf(finales, numAristas * 2);
+                tipos = Arrays.copyOf(tipos, numAristas * 2);
+            }
+            marcaTarea[desde] = hasta + 1;
+            marcaArista[desde] = numAristas;
+            origenes[numAristas] = desde;
+            finales[numAristas] = hasta;
+            tipos[numAristas++] = tipo;
+        }
+
+        private int variable(String nombre) {
+            Integer indice = indiceVariable.get(nombre);
+            if (indice != null) {
+                return indice;
+            }
+            if (numVariables == variables.length) {
+                variables = Arrays.copyOf(variables, numVariables * 2);
+                valoresIniciales = Arrays.copyOf(valoresIniciales, numVariables * 2);
+                ultimoEscritor = Arrays.copyOf(ultimoEscritor, numVariables * 2);
+                primerLector = Arrays.copyOf(primerLector, numVariables * 2);
+            }
+            variables[numVariables] = nombre;
+            ultimoEscritor[numVariables] = -1;
+            primerLector[numVariables] = -1;
+            indiceVariable.put(nombre, numVariables);
+            return numVariables++;
+        }
+
+        private int literal(int valor) {
+            if (numLiterales == literales.length) {
+                literales = Arrays.copyOf(literales, numLiterales * 2);
+            }
+            literales[numLiterales] = valor;
+            return numLiterales++;
+        }
+
+        private void agregarOperando(char operador, int operando) {
+            if (numOperandos == operandos.length) {
+                operandos = Arrays.copyOf(operandos, numOperandos * 2);
+                operadores = Arrays.copyOf(operadores, numOperandos * 2);
+            }
+            operadores[numOperandos] = operador;
+            operandos[numOperandos++] = operando;
+        }
+
+        private void crecerTareas() {
+            if (numTareas == nombres.length) {
+                int capacidad = numTareas * 2;
+                nombres = Arrays.copyOf(nombres, capacidad);
+                textos = Arrays.copyOf(textos, capacidad);
+                destinos = Arrays.copyOf(destinos, capacidad);
+                inicioOperandos = Arrays.copyOf(inicioOperandos, capacidad + 1);
+                x = Arrays.copyOf(x, capacidad);
+                y = Arrays.copyOf(y, capacidad);
+                costos = Arrays.copyOf(costos, capacidad);
+                marcaTarea = Arrays.copyOf(marcaTarea, capacidad);
+                marcaArista = Arrays.copyOf(marcaArista, capacidad);
+            }
+        }
+
+        int tareas() {
+            return numTareas;
+        }
+
+        int aristas() {
+            return numAristas;
+        }
+
+        int variables() {
+            return numVariables;
+        }
+
+        String nombre(int tarea) {
+            return nombres[tarea];
+        }
+
+        // La asignación como texto, p. ej. "a = b + c"
+        String texto(int tarea) {
+            return textos[tarea];
+        }
+
+        int destino(int tarea) {
+            return destinos[tarea];
+        }
+
+        // Variables distintas que lee la tarea
+        int[] lecturas(int tarea) {
+            int[] lecturas = new int[inicioOperandos[tarea + 1] - inicioOperandos[tarea]];
+            int n = 0;
+            for (int k = inicioOperandos[tarea]; k < inicioOperandos[tarea + 1]; k++) {
+                int variable = operandos[k];
+                boolean repetida = variable < 0;
+                for (int i = 0; i < n && !repetida; i++) {
+                    repetida = lecturas[i] == variable;
+                }
+                if (!repetida) {
+                    lecturas[n++] = variable;
+                }
+            }
+            return Arrays.copyOf(lecturas, n);
+        }
+
+        String variable(int indice) {
+            return variables[indice];
+        }
+
+        // Índice de la variable, o -1 si el grafo no la usa
+        int buscarVariable(String nombre) {
+            return indiceVariable.getOrDefault(nombre, -1);
+        }
+
+        int valorInicial(int variable) {
+            return valoresIniciales[variable];
+        }
+
+        int x(int tarea) {
+            return x[tarea];
+        }
+
+        int y(int tarea) {
+            return y[tarea];
+        }
+
+        // Costo estimado en milisegundos, o -1 si no se indicó
+        long costo(int tarea) {
+            return costos[tarea];
+        }
+
+        int origen(int arista) {
+            return origenes[arista];
+        }
+
+        int fin(int arista) {
+            return finales[arista];
+        }
+
+        byte tipo(int arista) {
+            return tipos[arista];
+        }
+
+        // Evalúa la expresión de la tarea leyendo las variables con valor;
+        // el producto tiene precedencia sobre la suma y la resta
+        int evaluar(int tarea, IntUnaryOperator valor) {
+            int total = 0;
+            int termino = 0;
+            for (int k = inicioOperandos[tarea]; k < inicioOperandos[tarea + 1]; k++) {
+                int operando = operandos[k] >= 0 ? valor.applyAsInt(operandos[k]) : literales[-operandos[k] - 1];
+                switch (operadores[k]) {
+                    case '*':
+                        termino *= operando;
+                        break;
+                    case '-':
+                        total += termino;
+                        termino = -operando;
+                        break;
+                    default:
+                        total += termino;
+                        termino = operando;
+                        break;
+                }
+            }
+            return total + termino;
+        }
+
+        // Grafo ejecutable con un trabajo por tarea y todas las aristas
+        GrafoTareas construir(IntFunction<Runnable> trabajo) {
+            GrafoTareas grafo = new GrafoTareas();
+            for (int i = 0; i < numTareas; i++) {
+                grafo.agregarNodo(nombres[i], trabajo.apply(i));
+            }
+            for (int k = 0; k < numAristas; k++) {
+                grafo.agregarArista(origenes[k], finales[k]);
+            }
+            return grafo;
+        }
+    }
+
+    // Análisis de dependencias por las condiciones de Bernstein: dos tareas
+    // Si y Sj (Si antes en el programa) pueden ejecutarse en paralelo solo si
+    // R(Si) ∩ W(Sj), W(Si) ∩ R(Sj) y W(Si) ∩ W(Sj) están vacíos, donde R y W
+    // son las variables que cada una lee y escribe. Las aristas RAW, WAR y
+    // WAW que infiere DefinicionGrafo generan exactamente ese orden; aquí se
+    // quitan las que ya están implicadas por un camino de otras (reducción
+    // transitiva) y las declaradas con "after" que no responden a ningún
+    // conflicto de datos, porque solo restringen el paralelismo. El resultado
+    // es el conjunto mínimo de aristas que respeta la semántica secuencial,
+    // con el que el ejecutor obtiene el mayor paralelismo legal. La reducción
+    // recorre hacia atrás solo la región entre las predecesoras de cada
+    // tarea, con a lo sumo VISITAS_REDUCCION visitas por tarea. Las
+    // predecesoras que quedan sin comprobar (por ejemplo, una tarea temprana
+    // que escribe una variable que leen todas las demás) se resuelven después
+    // con alcanzabilidad por bloques de 64 orígenes, un recorrido de las
+    // aristas por bloque que tenga alguna pendiente. Con dependencias locales
+    // no queda ninguna y el costo es lineal.
+    static final class AnalisisBernstein {
+        static final int VISITAS_REDUCCION = 256;
+
+
+        private final DefinicionGrafo definicion;
+        // Predecesoras que quedan de cada tarea, agrupadas por tarea:
+        // predecesoras[inicio[t] .. inicio[t + 1])
+        private final int[] inicio;
+        private final int[] predecesoras;
+        private final byte[] tipos;
+        private int implicadas; // aristas de datos quitadas por la reducción
+        private int sinConflicto; // aristas declaradas sin conflicto de datos
+        private final int[] nivel; // nivel más temprano de cada tarea
+
+        AnalisisBernstein(DefinicionGrafo definicion) {
+            this.definicion = definicion;
+            int tareas = definicion.tareas();
+            this.inicio = new int[tareas + 1];
+            int[] lista = new int[definicion.aristas()];
+            byte[] tiposLista = new byte[definicion.aristas()];
+            this.nivel = new int[tareas];
+
+            // Las aristas de la definición van agrupadas por tarea destino, en
+            // orden de archivo, y siempre de una tarea anterior a una posterior:
+            // el índice de tarea ya es un orden topológico
+            int[] marca = new int[tareas];
+            int[] candidatas = new int[16];
+            int[] pila = new int[16];
+            // Candidatas sin comprobar: (origen << 32) | posición en lista
+            long[] pendientes = new long[16];
+            int numPendientes = 0;
+            int total = 0;
+            int k = 0;
+            for (int t = 0; t < tareas; t++) {
+                int numCandidatas = 0;
+                for (; k < definicion.aristas() && definicion.fin(k) == t; k++) {
+                    if ((definicion.tipo(k) & ~DefinicionGrafo.DECLARADA) == 0) {
+                        sinConflicto++;
+                        continue;
+                    }
+                    if (numCandidatas == candidatas.length) {
+                        candidatas = Arrays.copyOf(candidatas, numCandidatas * 2);
+                    }
+                    candidatas[numCandidatas++] = k;
+                }
+                // De la predecesora más reciente a la más antigua: una
+                // predecesora alcanzable desde otra posterior es redundante.
+                // Hacia atrás el nivel siempre baja, así que la búsqueda se
+                // corta antes de la candidata más antigua o de menor nivel.
+                ordenarPorOrigenDescendente(definicion, candidatas, numCandidatas);
+                int minima = numCandidatas > 0 ? definicion.origen(candidatas[numCandidatas - 1]) : t;
+                int nivelMinimo = Integer.MAX_VALUE;
+                for (int c = 0; c < numCandidatas; c++) {
+                    nivelMinimo = Math.min(nivelMinimo, nivel[definicion.origen(candidatas[c])]);
+                }
+                int visitas = 0;
+                for (int c = 0; c < numCandidatas; c++) {
+                    int arista = candidatas[c];
+                    int origen = definicion.origen(arista);
+                    if (marca[origen] == t + 1) {
+                        implicadas++;
+                        continue;
+                    }
+                    lista[total] = origen;
+                    tiposLista[total++] = definicion.tipo(arista);
+                    nivel[t] = Math.max(nivel[t], nivel[origen] + 1);
+                    if (visitas > VISITAS_REDUCCION) {
+                        if (numPendientes == pendientes.length) {
+                            pendientes = Arrays.copyOf(pendientes, numPendientes * 2);
+                        }
+                        pendientes[numPendientes++] = (long) origen << 32 | (total - 1);
+                        continue;
+                    }
+                    int tope = 0;
+                    pila[tope++] = origen;
+                    while (tope > 0) {
+                        int actual = pila[--tope];
+                        for (int p = inicio[actual]; p < inicio[actual + 1]; p++) {
+                            int anterior = lista[p];
+                            if (anterior >= minima && nivel[anterior] >= nivelMinimo && marca[anterior] != t + 1) {
+                                if (++visitas > VISITAS_REDUCCION) {
+                                    // Las candidatas restantes quedan pendientes
+                                    tope = 0;
+                                    break;
+                                }
+                                marca[anterior] = t + 1;
+                                if (tope == pila.length) {
+                                    pila = Arrays.copyOf(pila, tope * 2);
+                                }
+                                pila[tope++] = anterior;
+                            }
+                        }
+                    }
+                }
+                inicio[t + 1] = total;
+            }
+            if (numPendientes > 0) {
+                resolverPendientes(lista, pendientes, numPendientes);
+                total = compactar(lista, tiposLista);
+            }
+            this.predecesoras = Arrays.copyOf(lista, total);
+            this.tipos = Arrays.copyOf(tiposLista, total);
+        }
+
+        // Decide las aristas pendientes por bloques de 64 orígenes. alcance[t]
+        // tiene un bit por cada tarea del bloque que llega a t; el arreglo se
+        // llena en orden topológico desde el inicio del bloque hasta el último
+        // destino pendiente. Una arista u -> t sobra si u llega a otra
+        // predecesora de t; se marca con -1 en lista. Quitar aristas
+        // implicadas no cambia la alcanzabilidad, así que las marcadas se
+        // pueden saltar en los bloques siguientes.
+        private void resolverPendientes(int[] lista, long[] pendientes, int numPendientes) {
+            Arrays.sort(pendientes, 0, numPendientes);
+            long[] alcance = new long[inicio.length - 1];
+            int i = 0;
+            while (i < numPendientes) {
+                int base = (int) (pendientes[i] >>> 32) & ~63;
+                int j = i;
+                int ultima = base;
+                while (j < numPendientes && (int) (pendientes[j] >>> 32) < base + 64) {
+                    ultima = Math.max(ultima, tareaDeArista((int) pendientes[j]));
+                    j++;
+                }
+                for (int t = base; t <= ultima; t++) {
+                    long bits = 0;
+                    for (int p = inicio[t]; p < inicio[t + 1]; p++) {
+                        int anterior = lista[p];
+                        if (anterior >= base) {
+                            bits |= alcance[anterior] | (anterior < base + 64 ? 1L << (anterior - base) : 0);
+                        }
+                    }
+                    alcance[t] = bits;
+                }
+                for (; i < j; i++) {
+                    int origen = (int) (pendientes[i] >>> 32);
+                    int arista = (int) pendientes[i];
+                    int t = tareaDeArista(arista);
+                    long bit = 1L << (origen - base);
+                    for (int p = inicio[t]; p < inicio[t + 1]; p++) {
+                        int otra = lista[p];
+                        if (p != arista && otra >= base && (alcance[otra] & bit) != 0) {
+                            lista[arista] = -1;
+                            implicadas++;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        // Quita de lista las aristas marcadas con -1 y corrige inicio
+        private int compactar(int[] lista, byte[] tiposLista) {
+            int total = 0;
+            int desde = 0;
+            for (int t = 0; t + 1 < inicio.length; t++) {
+                int hasta = inicio[t + 1];
+                for (int p = desde; p < hasta; p++) {
+                    if (lista[p] >= 0) {
+                        lista[total] = lista[p];
+                        tiposLista[total++] = tiposLista[p];
+                    }
+                }
+                desde = hasta;
+                inicio[t + 1] = total;
+            }
+            return total;
+        }
+
+        // Tarea destino de una arista de lista: la última t con inicio[t] <= arista
+        private int tareaDeArista(int arista) {
+            int bajo = 0;
+            int alto = inicio.length - 2;
+            while (bajo < alto) {
+                int medio = (bajo + alto + 1) >>> 1;
+                if (inicio[medio] <= arista) {
+                    bajo = medio;
+                } else {
+                    alto = medio - 1;
+                }
+            }
+            return bajo;
+        }
+
+        private static void ordenarPorOrigenDescendente(DefinicionGrafo definicion, int[] aristas, int n) {
+            // Pocas predecesoras por tarea: inserción
+            for (int i = 1; i < n; i++) {
+                int arista = aristas[i];
+                int j = i - 1;
+                while (j >= 0 && definicion.origen(aristas[j]) < definicion.origen(arista)) {
+                    aristas[j + 1] = aristas[j];
+                    j--;
+                }
+                aristas[j + 1] = arista;
+            }
+        }
+
+        private String interseccion(int[] lecturas, int escritura) {
+            for (int variable : lecturas) {
+                if (variable == escritura) {
+                    return definicion.variable(variable);
+                }
+            }
+            return null;
+        }
+
+        int aristas() {
+            return predecesoras.length;
+        }
+
+        // Las aristas que llegan a la tarea t son [inicioPredecesoras(t), inicioPredecesoras(t + 1))
+        int inicioPredecesoras(int tarea) {
+            return inicio[tarea];
+        }
+
+        int origen(int arista) {
+            return predecesoras[arista];
+        }
+
+        // Tarea destino de una arista (búsqueda binaria en inicio)
+        int fin(int arista) {
+            int bajo = 0;
+            int alto = inicio.length - 2;
+            while (bajo < alto) {
+                int medio = (bajo + alto + 1) >>> 1;
+                if (inicio[medio] <= arista) {
+                    bajo = medio;
+                } else {
+                    alto = medio - 1;
+                }
+            }
+            return bajo;
+        }
+
+        boolean declarada(int arista) {
+            return (tipos[arista] & DefinicionGrafo.DECLARADA) != 0;
+        }
+
+        int nivel(int tarea) {
+            return nivel[tarea];
+        }
+
+        // Grafo ejecutable con solo las aristas necesarias
+        GrafoTareas construir(IntFunction<Runnable> trabajo) {
+            GrafoTareas grafo = new GrafoTareas();
+            for (int t = 0; t < definicion.tareas(); t++) {
+                grafo.agregarNodo(definicion.nombre(t), trabajo.apply(t));
+            }
+            for (int t = 0; t < definicion.tareas(); t++) {
+                for (int p = inicio[t]; p < inicio[t + 1]; p++) {
+                    grafo.agregarArista(predecesoras[p], t);
+                }
+            }
+            return grafo;
+        }
+
+        // Resumen legible: las aristas que quedan con sus conflictos (hasta
+        // maxLineas) y los niveles de la planificación más paralela
+        String informe(int maxLineas) {
+            String fin = System.lineSeparator();
+            StringBuilder texto = new StringBuilder("Dependencias (condiciones de Bernstein):").append(fin);
+            int lineas = 0;
+            for (int t = 0; t < definicion.tareas() && lineas < maxLineas; t++) {
+                for (int p = inicio[t]; p < inicio[t + 1] && lineas < maxLineas; p++, lineas++) {
+                    int si = predecesoras[p];
+                    texto.append("  ").append(definicion.nombre(si)).append(" -> ").append(definicion.nombre(t))
+                            .append(':').append(conflictos(si, t))
+                            .append(declarada(p) ? " (declarada)" : " (no declarada)").append(fin);
+                }
+            }
+            if (lineas < aristas()) {
+                texto.append("  ... y ").append(aristas() - lineas).append(" más").append(fin);
+            }
+            if (implicadas > 0) {
+                texto.append(implicadas).append(" aristas implicadas por otras (reducción transitiva)").append(fin);
+            }
+            if (sinConflicto > 0) {
+                texto.append(sinConflicto).append(" aristas declaradas sin conflicto de datos; se omiten").append(fin);
+            }
+
+            int niveles = 0;
+            for (int n : nivel) {
+                niveles = Math.max(niveles, n + 1);
+            }
+            int[] ancho = new int[niveles];
+            for (int n : nivel) {
+                ancho[n]++;
+            }
+            int maximo = 0;
+            for (int a : ancho) {
+                maximo = Math.max(maximo, a);
+            }
+            texto.append("Planificación más paralela: ").append(niveles).append(" niveles, hasta ").append(maximo)
+                    .append(" tareas a la vez");
+            if (definicion.tareas() <= maxLineas) {
+                for (int n = 0; n < niveles; n++) {
+                    texto.append(n == 0 ? ": " : " | ");
+                    String separador = "";
+                    for (int t = 0; t < definicion.tareas(); t++) {
+                        if (nivel[t] == n) {
+                            texto.append(separador).append(definicion.nombre(t));
+                            separador = ", ";
+                        }
+                    }
+                }
+            }
+            return texto.append(fin).toString();
+        }
+
+        private String conflictos(int si, int sj) {
+            StringBuilder texto = new StringBuilder();
+            int escrituraI = definicion.destino(si);
+            int escrituraJ = definicion.destino(sj);
+            String variable = interseccion(definicion.lecturas(sj), escrituraI);
+            if (variable != null) {
+                texto.append(" RAW ").append(variable);
+            }
+            variable = interseccion(definicion.lecturas(si), escrituraJ);
+            if (variable != null) {
+                texto.append(texto.length() > 0 ? "," : "").append(" WAR ").append(variable);
+            }
+            if (escrituraI == escrituraJ) {
+                texto.append(texto.length() > 0 ? "," : "").append(" WAW ").append(definicion.variable(escrituraI));
+            }
+            return texto.toString();
+        }
+    }
+
+    // Análisis de trabajo y lapso de un grafo con un costo por tarea (estimado
+    // con "cost" o medido en una ejecución):
+    //  - trabajo: suma de todos los costos, el tiempo con un solo hilo;
+    //  - lapso: el camino más costoso de principio a fin (camino crítico),
+    //    el tiempo con hilos ilimitados;
+    //  - trabajo / lapso: la aceleración máxima posible;
+    //  - trabajo / p + lapso: cota de Brent para p hilos con un planificador
+    //    que nunca deja un hilo ocioso si hay tareas listas.
+    // El nivel inferior de cada tarea (su costo más el del camino más
+    // costoso hasta el final) es la prioridad de planificación por camino
+    // crítico: entre las tareas listas, primero la que más trabajo encadenado
+    // tiene por delante.
+    static final class CaminoCritico {
+        private final AnalisisBernstein analisis;
+        private final DefinicionGrafo definicion;
+        private final long[] costos;
+        private final long[] nivelInferior;
+        private final int[] siguiente; // sucesora en el camino más costoso, o -1
+        private final int[] largo; // tareas del camino que sigue siguiente desde cada una
+        final long trabajo;
+        final long lapso;
+
+        CaminoCritico(DefinicionGrafo definicion, AnalisisBernstein analisis, long[] costos) {
+            this.definicion = definicion;
+            this.analisis = analisis;
+            this.costos = costos;
+            int tareas = definicion.tareas();
+            this.nivelInferior = costos.clone();
+            this.siguiente = new int[tareas];
+            Arrays.fill(siguiente, -1);
+            this.largo = new int[tareas];
+            Arrays.fill(largo, 1);
+            long suma = 0;
+            for (long costo : costos) {
+                suma += costo;
+            }
+            this.trabajo = suma;
+
+            // Las sucesoras tienen índice mayor: de la última tarea hacia atrás,
+            // el nivel inferior de cada una ya es definitivo al propagarlo. A
+            // igual costo se sigue la sucesora con el camino de más tareas,
+            // así que con costos cero el camino también llega hasta el final.
+            long maximo = 0;
+            for (int t = tareas - 1; t >= 0; t--) {
+                for (int p = analisis.inicioPredecesoras(t); p < analisis.inicioPredecesoras(t + 1); p++) {
+                    int anterior = analisis.origen(p);
+                    long nivel = costos[anterior] + nivelInferior[t];
+                    if (nivel > nivelInferior[anterior]
+                            || (nivel == nivelInferior[anterior] && largo[t] + 1 > largo[anterior])) {
+                        nivelInferior[anterior] = nivel;
+                        siguiente[anterior] = t;
+                        largo[anterior] = largo[t] + 1;
+                    }
+                }
+                maximo = Math.max(maximo, nivelInferior[t]);
+            }
+            this.lapso = maximo;
+        }
+
+        // Costos de la definición; las tareas sin "cost" valen porDefecto
+        static long[] costosEstimados(DefinicionGrafo definicion, long porDefecto) {
+            long[] costos = new long[definicion.tareas()];
+            for (int t = 0; t < costos.length; t++) {
+                costos[t] = definicion.costo(t) >= 0 ? definicion.costo(t) : porDefecto;
+            }
+            return costos;
+        }
+
+        // Prioridades para el ejecutor (mayor primero)
+        long[] prioridades() {
+            return nivelInferior.clone();
+        }
+
+        // Tareas del camino crítico, de la primera a la última
+        int[] camino() {
+            // La primera tarea con el nivel inferior máximo lo empieza
+            int inicio = -1;
+            for (int t = 0; t < nivelInferior.length && inicio < 0; t++) {
+                if (nivelInferior[t] == lapso) {
+                    inicio = t;
+                }
+            }
+            int[] camino = new int[largo[inicio]];
+            int k = 0;
+            for (int t = inicio; t >= 0; t = siguiente[t]) {
+                camino[k++] = t;
+            }
+            return camino;
+        }
+
+        String informe(String unidad, int hilos, int maxTareas) {
+            String fin = System.lineSeparator();
+            StringBuilder texto = new StringBuilder();
+            texto.append("Trabajo total: ").append(trabajo).append(' ').append(unidad)
+                    .append(", lapso (camino crítico): ").append(lapso).append(' ').append(unidad).append(fin);
+            int[] camino = camino();
+            texto.append("Camino crítico (").append(camino.length).append(" tareas): ");
+            for (int k = 0; k < Math.min(camino.length, maxTareas); k++) {
+                texto.append(k > 0 ? " -> " : "").append(definicion.nombre(camino[k]));
+            }
+            if (camino.length > maxTareas) {
+                texto.append(" -> ... (").append(camino.length - maxTareas).append(" más)");
+            }
+            texto.append(fin);
+            if (lapso > 0) {
+                texto.append(String.format("Aceleración máxima: %.2f; con %d hilos, a lo sumo %d %s (cota de Brent)",
+                        (double) trabajo / lapso, hilos, (trabajo + hilos - 1) / hilos + lapso, unidad)).append(fin);
+            }
+            return texto.toString();
+        }
+    }
+
+    // Reejecución incremental de un grafo de asignaciones cuando cambian
+    // valores iniciales. Como el resultado de cada tarea se guarda aparte,
+    // basta el flujo de datos: cada lectura toma el resultado de la última
+    // tarea anterior que escribió esa variable (su fuente) o, si no hay
+    // ninguna, el valor inicial. Las dependencias WAR y WAW solo ordenan
+    // escrituras sobre las mismas variables y aquí no hacen falta.
+    // Al cambiar valores iniciales se ejecuta en un EjecutorGrafo solo el
+    // cono de tareas que dependen de ellos por flujo de datos, y dentro del
+    // cono:
+    //  - una tarea cuyas entradas no cambiaron no se evalúa ni propaga
+    //    (corte temprano), así que el trabajo real es proporcional a lo
+    //    que cambió;
+    //  - antes de evaluar se busca el resultado en la memoria de la tarea,
+    //    sus últimas MEMORIA_POR_TAREA combinaciones de entradas, así que un
+    //    barrido que vuelve a valores ya vistos no evalúa de nuevo.
+    // Cada tarea solo escribe sus propias posiciones y sus fuentes terminan
+    // antes que ella, así que no hacen falta cerrojos. Las reejecuciones no
+    // deben solaparse: cada una empieza cuando terminó la anterior.
+    static final class EjecucionIncremental {
+        static final int MEMORIA_POR_TAREA = 4;
+
+        // Lo que hizo una reejecución
+        static final class Resumen {
+            final int cono; // tareas alcanzables desde los valores cambiados
+            final int evaluadas;
+            final int desdeMemoria;
+            final int sinEntradasNuevas; // cortadas antes de evaluar
+            final int[] cambiadas; // tareas cuyo resultado cambió, en orden
+
+            Resumen(int cono, int evaluadas, int desdeMemoria, int sinEntradasNuevas, int[] cambiadas) {
+                this.cono = cono;
+                this.evaluadas = evaluadas;
+                this.desdeMemoria = desdeMemoria;
+                this.sinEntradasNuevas = sinEntradasNuevas;
+                this.cambiadas = cambiadas;
+            }
+
+            String texto(int tareas) {
+                return "Reejecución: " + cono + " de " + tareas + " tareas en el cono, " + evaluadas + " evaluadas, "
+                        + desdeMemoria + " desde la memoria, " + sinEntradasNuevas + " sin entradas nuevas; "
+                        + cambiadas.length + " resultados cambiaron";
+            }
+        }
+
+        private final DefinicionGrafo definicion;
+        private final IntConsumer alEvaluar;
+        // Lecturas de la tarea t: [inicioLecturas[t], inicioLecturas[t + 1])
+        private final int[] inicioLecturas;
+        private final int[] variableLectura;
+        private final int[] fuenteLectura; // tarea que escribió el valor leído, o -1
+        // Tareas que leen el resultado de t, y las que leen el valor inicial de v
+        private final int[] inicioLectores;
+        private final int[] lectores;
+        private final int[] inicioLectoresIniciales;
+        private final int[] lectoresIniciales;
+        private final int[] ultimoEscritor; // por variable, o -1
+        private final int[] entradas; // valores iniciales actuales
+        private final int[] resultados;
+        private final boolean[] tareaCambiada;
+        private final boolean[] entradaCambiada;
+        // Memoria de la tarea t: juego k de entradas en
+        // MEMORIA_POR_TAREA * inicioLecturas[t] + k * lecturas, resultado
+        // en MEMORIA_POR_TAREA * t + k
+        private final int[] memoriaEntradas;
+        private final int[] memoriaResultados;
+        private final byte[] memoriaUsada;
+        private final byte[] memoriaSiguiente;
+        private final int[] nodoDeTarea; // posición en el cono de la reejecución actual, o -1
+
+        // Parte de los resultados de una ejecución completa; alEvaluar se
+        // llama cada vez que una tarea se evalúa de verdad (p. ej. para
+        // simular su costo)
+        EjecucionIncremental(DefinicionGrafo definicion, int[] resultados, IntConsumer alEvaluar) {
+            this.definicion = definicion;
+            this.alEvaluar = alEvaluar;
+            int tareas = definicion.tareas();
+            int variables = definicion.variables();
+            this.resultados = resultados.clone();
+            this.entradas = new int[variables];
+            for (int v = 0; v < variables; v++) {
+                entradas[v] = definicion.valorInicial(v);
+            }
+
+            // Fuentes de cada lectura, recorriendo las tareas en el orden del archivo
+            this.ultimoEscritor = new int[variables];
+            Arrays.fill(ultimoEscritor, -1);
+            this.inicioLecturas = new int[tareas + 1];
+            int[][] lecturas = new int[tareas][];
+            for (int t = 0; t < tareas; t++) {
+                lecturas[t] = definicion.lecturas(t);
+                inicioLecturas[t + 1] = inicioLecturas[t] + lecturas[t].length;
+            }
+            this.variableLectura = new int[inicioLecturas[tareas]];
+            this.fuenteLectura = new int[inicioLecturas[tareas]];
+            int[] lectoresPorTarea = new int[tareas + 1];
+            int[] lectoresPorVariable = new int[variables + 1];
+            for (int t = 0; t < tareas; t++) {
+                int k = inicioLecturas[t];
+                for (int variable : lecturas[t]) {
+                    variableLectura[k] = variable;
+                    fuenteLectura[k] = ultimoEscritor[variable];
+                    if (fuenteLectura[k] >= 0) {
+                        lectoresPorTarea[fuenteLectura[k] + 1]++;
+                    } else {
+                        lectoresPorVariable[variable + 1]++;
+                    }
+                    k++;
+                }
+                ultimoEscritor[definicion.destino(t)] = t;
+            }
+
+            // Lectores compactados por fuente
+            for (int t = 0; t < tareas; t++) {
+                lectoresPorTarea[t + 1] += lectoresPorTarea[t];
+            }
+            for (int v = 0; v < variables; v++) {
+                lectoresPorVariable[v + 1] += lectoresPorVariable[v];
+            }
+            this.inicioLectores = lectoresPorTarea.clone();
+            this.inicioLectoresIniciales = lectoresPorVariable.clone();
+            this.lectores = new int[inicioLectores[tareas]];
+            this.lectoresIniciales = new int[inicioLectoresIniciales[variables]];
+            for (int t = 0; t < tareas; t++) {
+                for (int k = inicioLecturas[t]; k < inicioLecturas[t + 1]; k++) {
+                    if (fuenteLectura[k] >= 0) {
+                        lectores[lectoresPorTarea[fuenteLectura[k]]++] = t;
+                    } else {
+                        lectoresIniciales[lectoresPorVariable[variableLectura[k]]++] = t;
+                    }
+                }
+            }
+
+            // La memoria empieza con las entradas y el resultado de la
+            // ejecución completa
+            this.tareaCambiada = new boolean[tareas];
+            this.entradaCambiada = new boolean[variables];
+            this.memoriaEntradas = new int[MEMORIA_POR_TAREA * inicioLecturas[tareas]];
+            this.memoriaResultados = new int[MEMORIA_POR_TAREA * tareas];
+            this.memoriaUsada = new byte[tareas];
+            this.memoriaSiguiente = new byte[tareas];
+            this.nodoDeTarea = new int[tareas];
+            Arrays.fill(nodoDeTarea, -1);
+            for (int t = 0; t < tareas; t++) {
+                int base = MEMORIA_POR_TAREA * inicioLecturas[t];
+                for (int k = inicioLecturas[t]; k < inicioLecturas[t + 1]; k++) {
+                    memoriaEntradas[base + k - inicioLecturas[t]] = entrada(k);
+                }
+                memoriaResultados[MEMORIA_POR_TAREA * t] = resultados[t];
+                memoriaUsada[t] = 1;
+                memoriaSiguiente[t] = 1 % MEMORIA_POR_TAREA;
+            }
+        }
+
+        // Valor de la lectura k con los resultados actuales
+        private int entrada(int lectura) {
+            int fuente = fuenteLectura[lectura];
+            return fuente >= 0 ? resultados[fuente] : entradas[variableLectura[lectura]];
+        }
+
+        int resultado(int tarea) {
+            return resultados[tarea];
+        }
+
+        // Valor final de la variable: el de su última escritura o el inicial
+        int valor(int variable) {
+            int escritor = ultimoEscritor[variable];
+            return escritor >= 0 ? resultados[escritor] : entradas[variable];
+        }
+
+        // Cambia los valores iniciales de las variables y reejecuta lo afectado
+        CompletableFuture<Resumen> cambiar(EjecutorGrafo ejecutor, int[] variables, int[] valores) {
+            // Cono: tareas alcanzables por flujo de datos desde las lecturas
+            // de los valores cambiados
+            int[] cono = new int[16];
+            int tamano = 0;
+            for (int i = 0; i < variables.length; i++) {
+                int variable = variables[i];
+                if (entradas[variable] == valores[i]) {
+                    continue;
+                }
+                entradas[variable] = valores[i];
+                entradaCambiada[variable] = true;
+                for (int k = inicioLectoresIniciales[variable]; k < inicioLectoresIniciales[variable + 1]; k++) {
+                    int lector = lectoresIniciales[k];
+                    if (nodoDeTarea[lector] < 0) {
+                        nodoDeTarea[lector] = 0;
+                        if (tamano == cono.length) {
+                            cono = Arrays.copyOf(cono, tamano * 2);
+                        }
+                        cono[tamano++] = lector;
+                    }
+                }
+            }
+            for (int i = 0; i < tamano; i++) {
+                int tarea = cono[i];
+                for (int k = inicioLectores[tarea]; k < inicioLectores[tarea + 1]; k++) {
+                    int lector = lectores[k];
+                    if (nodoDeTarea[lector] < 0) {
+                        nodoDeTarea[lector] = 0;
+                        if (tamano == cono.length) {
+                            cono = Arrays.copyOf(cono, tamano * 2);
+                        }
+                        cono[tamano++] = lector;
+                    }
+                }
+            }
+            int[] ordenado = Arrays.copyOf(cono, tamano);
+            Arrays.sort(ordenado);
+
+            // Subgrafo del cono con sus aristas de flujo de datos
+            AtomicInteger evaluadas = new AtomicInteger();
+            AtomicInteger desdeMemoria = new AtomicInteger();
+            AtomicInteger sinEntradasNuevas = new AtomicInteger();
+            GrafoTareas grafo = new GrafoTareas();
+            for (int i = 0; i < ordenado.length; i++) {
+                int tarea = ordenado[i];
+                nodoDeTarea[tarea] = i;
+                grafo.agregarNodo(definicion.nombre(tarea),
+                        () -> reevaluar(tarea, evaluadas, desdeMemoria, sinEntradasNuevas));
+            }
+            for (int tarea : ordenado) {
+                for (int k = inicioLecturas[tarea]; k < inicioLecturas[tarea + 1]; k++) {
+                    int fuente = fuenteLectura[k];
+                    if (fuente >= 0 && nodoDeTarea[fuente] >= 0) {
+                        grafo.agregarArista(nodoDeTarea[fuente], nodoDeTarea[tarea]);
+                    }
+                }
+            }
+
+            return ejecutor.ejecutar(grafo).handle((r, error) -> {
+                int cambiadas = 0;
+                for (int tarea : ordenado) {
+                    nodoDeTarea[tarea] = -1;
+                    if (tareaCambiada[tarea]) {
+                        ordenado[cambiadas++] = tarea;
+                        tareaCambiada[tarea] = false;
+                    }
+                }
+                Arrays.fill(entradaCambiada, false);
+                if (error != null) {
+                    throw new CompletionException(error);
+                }
+                return new Resumen(ordenado.length, evaluadas.get(), desdeMemoria.get(), sinEntradasNuevas.get(),
+                        Arrays.copyOf(ordenado, cambiadas));
+            });
+        }
+
+        private void reevaluar(int tarea, AtomicInteger evaluadas, AtomicInteger desdeMemoria,
+                AtomicInteger sinEntradasNuevas) {
+            int inicio = inicioLecturas[tarea];
+            int lecturas = inicioLecturas[tarea + 1] - inicio;
+            boolean nuevas = false;
+            for (int k = inicio; k < inicio + lecturas && !nuevas; k++) {
+                int fuente = fuenteLectura[k];
+                nuevas = fuente >= 0 ? tareaCambiada[fuente] : entradaCambiada[variableLectura[k]];
+            }
+            if (!nuevas) {
+                sinEntradasNuevas.incrementAndGet();
+                return;
+            }
+
+            // Buscar las entradas actuales en la memoria de la tarea
+            int base = MEMORIA_POR_TAREA * inicio;
+            int encontrada = -1;
+            for (int m = 0; m < memoriaUsada[tarea] && encontrada < 0; m++) {
+                boolean iguales = true;
+                for (int k = 0; k < lecturas && iguales; k++) {
+                    iguales = memoriaEntradas[base + m * lecturas + k] == entrada(inicio + k);
+                }
+                if (iguales) {
+                    encontrada = m;
+                }
+            }
+            int valor;
+            if (encontrada >= 0) {
+                valor = memoriaResultados[MEMORIA_POR_TAREA * tarea + encontrada];
+                desdeMemoria.incrementAndGet();
+            } else {
+                alEvaluar.accept(tarea);
+                valor = definicion.evaluar(tarea, variable -> {
+                    for (int k = inicio; k < inicio + lecturas; k++) {
+                        if (variableLectura[k] == variable) {
+                            return entrada(k);
+                        }
+                    }
+                    throw new IllegalStateException("Variable no leída: " + definicion.variable(variable));
+                });
+                evaluadas.incrementAndGet();
+                int m = memoriaSiguiente[tarea];
+                for (int k = 0; k < lecturas; k++) {
+                    memoriaEntradas[base + m * lecturas + k] = entrada(inicio + k);
+                }
+                memoriaResultados[MEMORIA_POR_TAREA * tarea + m] = valor;
+                memoriaUsada[tarea] = (byte) Math.max(memoriaUsada[tarea], m + 1);
+                memoriaSiguiente[tarea] = (byte) ((m + 1) % MEMORIA_POR_TAREA);
+            }
+            if (valor != resultados[tarea]) {
+                resultados[tarea] = valor;
+                tareaCambiada[tarea] = true;
+            }
+        }
+    }
+
+    public GrafoPrecedencia() throws IOException {
+        this(DefinicionGrafo.cargar(new StringReader(GRAFO_EJEMPLO)));
+    }
+
+    public GrafoPrecedencia(DefinicionGrafo definicion) {
+        this(definicion, DURACION_TAREA_MS);
+    }
+
+    // costoPorDefecto: duración en ms de las tareas sin "cost"
+    public GrafoPrecedencia(DefinicionGrafo definicion, long costoPorDefecto) {
+        this.definicion = definicion;
+        this.analisis = new AnalisisBernstein(definicion);
+        this.costos = CaminoCritico.costosEstimados(definicion, costoPorDefecto);
+        this.duraciones = new long[definicion.tareas()];
+        this.resultados = new int[definicion.tareas()];
+        this.ejecutado = new AtomicIntegerArray(definicion.tareas());
+        this.variables = new AlmacenVariables(definicion);
+    }
+
+    DefinicionGrafo definicion() {
+        return definicion;
+    }
+
+    AnalisisBernstein analisis() {
+        return analisis;
+    }
+
+    // Valores actuales de las variables, consistentes entre sí
+    int[] valores() {
+        return variables.instantanea();
+    }
+
+    // Valores de las primeras maxVariables variables en una foto consistente
+    // del almacén
+    String informeValores(int maxVariables) {
+        int[] valores = valores();
+        StringBuilder texto = new StringBuilder("Valores: ");
+        for (int k = 0; k < Math.min(valores.length, maxVariables); k++) {
+            texto.append(k > 0 ? ", " : "").append(definicion.variable(k)).append('=').append(valores[k]);
+        }
+        if (valores.length > maxVariables) {
+            texto.append(", ... (").append(valores.length - maxVariables).append(" más)");
+        }
+        return texto.toString();
+    }
+
+    // Tareas terminadas hasta ahora; sirve de versión del estado
+    int terminadas() {
+        return terminadas.get();
+    }
+
+    // Estado de las tareas y de las variables en un instante, inmutable una
+    // vez construido
+    static final class Instantanea {
+        final int terminadas;
+        private final boolean[] ejecutado;
+        private final int[] resultados;
+        private final int[] valores;
+
+        private Instantanea(int terminadas, boolean[] ejecutado, int[] resultados, int[] valores) {
+            this.terminadas = terminadas;
+            this.ejecutado = ejecutado;
+            this.resultados = resultados;
+            this.valores = valores;
+        }
+
+        boolean ejecutado(int tarea) {
+            return ejecutado[tarea];
+        }
+
+        int resultado(int tarea) {
+            return resultados[tarea];
+        }
+
+        int valor(int variable) {
+            return valores[variable];
+        }
+    }
+
+    // Copia el estado sin detener a las tareas: cada una publica su
+    // resultado antes de marcarse como ejecutada, así que la copia nunca ve
+    // una tarea ejecutada sin su resultado. Las variables salen de la foto
+    // consistente del almacén, tomada después: incluyen al menos lo escrito
+    // por las tareas que la copia ve ejecutadas.
+    Instantanea instantanea() {
+        int version = terminadas.get();
+        boolean[] copiaEjecutado = new boolean[resultados.length];
+        int[] copiaResultados = new int[resultados.length];
+        for (int t = 0; t < resultados.length; t++) {
+            if (ejecutado.get(t) == 1) {
+                copiaEjecutado[t] = true;
+                copiaResultados[t] = resultados[t];
+            }
+        }
+        return new Instantanea(version, copiaEjecutado, copiaResultados, variables.instantanea());
+    }
+
+    // Ventana del grafo. No comparte cerrojos con las tareas ni recibe un
+    // aviso por cada una: un javax.swing.Timer, a lo sumo
+    // CUADROS_POR_SEGUNDO veces por segundo, toma una instantánea si terminó
+    // alguna tarea desde la anterior y repinta con ella. Las fuentes y el
+    // trazo se crean una sola vez.
+    static final class VistaGrafo extends JPanel {
+        private static final long serialVersionUID = 1L;
+        static final int CUADROS_POR_SEGUNDO = 30;
+        private static final Font FUENTE_NOMBRE = new Font("Arial", Font.BOLD, 14);
+        private static final Font FUENTE_OPERACION = new Font("Arial", Font.PLAIN, 10);
+        private static final BasicStroke TRAZO_ARISTA = new BasicStroke(2);
+
+        private final GrafoPrecedencia grafo;
+        private final DefinicionGrafo definicion;
+        private final AnalisisBernstein analisis;
+        private final Point[] posiciones;
+        private final String iniciales;
+        private Instantanea instantanea; // solo se usa en el hilo de eventos
+
+        VistaGrafo(GrafoPrecedencia grafo) {
+            this.grafo = grafo;
+            this.definicion = grafo.definicion();
+            this.analisis = grafo.analisis();
+            this.posiciones = new Point[definicion.tareas()];
+            this.instantanea = grafo.instantanea();
+            inicializarPosiciones();
+
+            StringBuilder texto = new StringBuilder("Valores iniciales: ");
+            for (int k = 0; k < definicion.variables(); k++) {
+                texto.append(k > 0 ? ", " : "").append(definicion.variable(k)).append('=')
+                        .append(definicion.valorInicial(k));
+            }
+            this.iniciales = texto.toString();
+
+            int ancho = 600;
+            int alto = 400;
+            for (Point posicion : posiciones) {
+                ancho = Math.max(ancho, posicion.x + 100);
+                alto = Math.max(alto, posicion.y + 200);
+            }
+            setPreferredSize(new Dimension(ancho, alto));
+            setBackground(Color.WHITE);
+            new Timer(1000 / CUADROS_POR_SEGUNDO, e -> muestrear()).start();
+        }
+
+        // Las tareas sin "at" se reparten por niveles: cada una va una fila más
+        // abajo que la más baja de sus predecesoras
+        private void inicializarPosiciones() {
+            Map<Integer, Integer> ocupados = new HashMap<>();
+            for (int t = 0; t < definicion.tareas(); t++) {
+                if (definicion.x(t) != DefinicionGrafo.SIN_POSICION) {
+                    posiciones[t] = new Point(definicion.x(t), definicion.y(t));
+                } else {
+                    int nivel = analisis.nivel(t);
+                    int columna = ocupados.merge(nivel, 1, Integer::sum) - 1;
+                    posiciones[t] = new Point(50 + 100 * columna, 100 + 100 * nivel);
+                }
+            }
+        }
+
+        private void muestrear() {
+            if (grafo.terminadas() != instantanea.terminadas) {
+                instantanea = grafo.instantanea();
+                repaint();
+            }
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            Graphics2D g2d = (Graphics2D) g;
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            Instantanea estado = instantanea;
+
+            // Dibujar dependencias; en rojo las que no estaban declaradas
+            g2d.setStroke(TRAZO_ARISTA);
+            for (int k = 0; k < analisis.aristas(); k++) {
+                g2d.setColor(analisis.declarada(k) ? Color.BLUE : Color.RED);
+                drawArrow(g2d, analisis.origen(k), analisis.fin(k));
+            }
 
             // Dibujar nodos
-            for (Map.Entry<String, Point> entry : posiciones.entrySet()) {
-                String nodo = entry.getKey();
-                Point pos = entry.getValue();
+            FontMetrics metricasNombre = g2d.getFontMetrics(FUENTE_NOMBRE);
+            FontMetrics metricasOperacion = g2d.getFontMetrics(FUENTE_OPERACION);
+            for (int t = 0; t < definicion.tareas(); t++) {
+                String nodo = definicion.nombre(t);
+                Point pos = posiciones[t];
 
                 // Color según estado de ejecución
-                if (ejecutado.getOrDefault(nodo, false)) {
+                if (estado.ejecutado(t)) {
                     g2d.setColor(Color.GREEN);
                 } else {
                     g2d.setColor(Color.LIGHT_GRAY);
@@ -71,172 +2028,282 @@ public class GrafoPrecedencia extends JPanel {
                 g2d.drawOval(pos.x - 25, pos.y - 25, 50, 50);
 
                 // Dibujar nombre de la tarea
-                g2d.setFont(new Font("Arial", Font.BOLD, 14));
-                FontMetrics fm = g2d.getFontMetrics();
-                int stringWidth = fm.stringWidth(nodo);
-                g2d.drawString(nodo, pos.x - stringWidth / 2, pos.y - 5);
+                g2d.setFont(FUENTE_NOMBRE);
+                g2d.drawString(nodo, pos.x - metricasNombre.stringWidth(nodo) / 2, pos.y - 5);
 
                 // Dibujar operación y resultado
-                g2d.setFont(new Font("Arial", Font.PLAIN, 10));
-                String operacion = operaciones.get(nodo);
-                String resultado = "";
-                if (ejecutado.getOrDefault(nodo, false)) {
-                    switch (nodo) {
-                        case "S1":
-                            resultado = "a=" + a;
-                            break;
-                        case "S2":
-                            resultado = "b=" + b;
-                            break;
-                        case "S3":
-                            resultado = "e=" + e;
-                            break;
-                        case "S4":
-                            resultado = "c=" + c;
-                            break;
-                        case "S5":
-                            resultado = "h=" + h;
-                            break;
-                    }
-                }
-                stringWidth = g2d.getFontMetrics().stringWidth(operacion);
-                g2d.drawString(operacion, pos.x - stringWidth / 2, pos.y + 10);
-                if (!resultado.isEmpty()) {
-                    stringWidth = g2d.getFontMetrics().stringWidth(resultado);
-                    g2d.drawString(resultado, pos.x - stringWidth / 2, pos.y + 20);
+                g2d.setFont(FUENTE_OPERACION);
+                String operacion = definicion.texto(t);
+                g2d.drawString(operacion, pos.x - metricasOperacion.stringWidth(operacion) / 2, pos.y + 10);
+                if (estado.ejecutado(t)) {
+                    String resultado = definicion.variable(definicion.destino(t)) + "=" + estado.resultado(t);
+                    g2d.drawString(resultado, pos.x - metricasOperacion.stringWidth(resultado) / 2, pos.y + 20);
                 }
             }
             g2d.setColor(Color.BLACK);
-            g2d.drawString("Valores iniciales: a=" + t_a + ", b=" + t_b + ", c=" + t_c + ", d= " + t_d +
-                    ", e=" + t_e + ", f=" + t_f + ", g=" + t_g + ", h=" + t_h + ", i=" + t_i + ", j=" + t_j, 10, 350);
-
+            g2d.drawString(iniciales, 10, getPreferredSize().height - 50);
+            StringBuilder actuales = new StringBuilder("Valores actuales: ");
+            for (int k = 0; k < definicion.variables(); k++) {
+                actuales.append(k > 0 ? ", " : "").append(definicion.variable(k)).append('=')
+                        .append(estado.valor(k));
+            }
+            g2d.drawString(actuales.toString(), 10, getPreferredSize().height - 30);
         }
-    }
 
-    private void drawArrow(Graphics2D g2d, String from, String to) {
-        Point p1 = posiciones.get(from);
-        Point p2 = posiciones.get(to);
+        private void drawArrow(Graphics2D g2d, int from, int to) {
+            Point p1 = posiciones[from];
+            Point p2 = posiciones[to];
 
-        int x1 = p1.x;
-        int y1 = p1.y + 25;
-        int x2 = p2.x;
-        int y2 = p2.y - 25;
+            int x1 = p1.x;
+            int y1 = p1.y + 25;
+            int x2 = p2.x;
+            int y2 = p2.y - 25;
 
-        g2d.drawLine(x1, y1, x2, y2);
-        double angle = Math.atan2(y2 - y1, x2 - x1);
-        int arrowLength = 10;
-        int x3 = (int) (x2 - arrowLength * Math.cos(angle - Math.PI / 6));
-        int y3 = (int) (y2 - arrowLength * Math.sin(angle - Math.PI / 6));
-        int x4 = (int) (x2 - arrowLength * Math.cos(angle + Math.PI / 6));
-        int y4 = (int) (y2 - arrowLength * Math.sin(angle + Math.PI / 6));
+            g2d.drawLine(x1, y1, x2, y2);
+            double angle = Math.atan2(y2 - y1, x2 - x1);
+            int arrowLength = 10;
+            int x3 = (int) (x2 - arrowLength * Math.cos(angle - Math.PI / 6));
+            int y3 = (int) (y2 - arrowLength * Math.sin(angle - Math.PI / 6));
+            int x4 = (int) (x2 - arrowLength * Math.cos(angle + Math.PI / 6));
+            int y4 = (int) (y2 - arrowLength * Math.sin(angle + Math.PI / 6));
 
-        g2d.drawLine(x2, y2, x3, y3);
-        g2d.drawLine(x2, y2, x4, y4);
-    }
+            g2d.drawLine(x2, y2, x3, y3);
+            g2d.drawLine(x2, y2, x4, y4);
+        }
 
-    private void updateStateAndRepaint(String task) {
-        synchronized (lock) {
-            ejecutado.put(task, true);
+        // Muestra la ventana y, un segundo después, empieza la ejecución
+        static void mostrar(GrafoPrecedencia grafo, Runnable ejecucion) {
+            SwingUtilities.invokeLater(() -> {
+                JFrame frame = new JFrame("Grafo de Precedencia - Concurrencia");
+
+                frame.add(new VistaGrafo(grafo));
+                frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                frame.pack();
+                frame.setLocationRelativeTo(null);
+                frame.setVisible(true);
+
+                Timer inicio = new Timer(1000, e -> ejecucion.run());
+                inicio.setRepeats(false);
+                inicio.start();
+            });
         }
-        SwingUtilities.invokeLater(() -> repaint());
     }
 
-    public void ejecutarGrafo() {
-        // Tareas con hilos
-        Thread s1Thread = new Thread(() -> {
+    // Cuerpo de cada tarea: simula el costo, evalúa la asignación sobre el
+    // almacén de variables y publica el resultado. Cada tarea escribe solo su propia
+    // duración; se leen cuando terminó todo el grafo.
+    private Runnable tarea(int t) {
+        boolean detallar = definicion.tareas() <= MAX_LINEAS_EJECUCION;
+        return () -> {
+            long inicio = System.nanoTime();
             try {
-                Thread.sleep(2000);
-                synchronized (lock) {
-                    a = b + c;
+                if (costos[t] > 0) {
+                    Thread.sleep(costos[t]);
+                }
+                int valor = definicion.evaluar(t, variables::leer);
+                variables.escribir(definicion.destino(t), valor);
+                resultados[t] = valor;
+                ejecutado.set(t, 1);
+                terminadas.incrementAndGet();
+                if (detallar) {
+                    System.out.println(definicion.nombre(t) + " ejecutado: "
+                            + definicion.variable(definicion.destino(t)) + " = " + valor);
                 }
-                updateStateAndRepaint("S1");
-                System.out.println("S1 ejecutado: a = " + a);
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
-        });
+            duraciones[t] = (System.nanoTime() - inicio) / 1_000;
+        };
+    }
 
-        Thread s3Thread = new Thread(() -> {
-            try {
-                Thread.sleep(2000);
-                synchronized (lock) {
-                    e = c + f;
-                }
-                updateStateAndRepaint("S3");
-                System.out.println("S3 ejecutado: e = " + e);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+    // Las duraciones se miden en µs, pero si alguna llega a 10 ms el camino
+    // crítico medido se informa en ms
+    private boolean duracionesEnMs() {
+        for (long duracion : duraciones) {
+            if (duracion >= 10_000) {
+                return true;
             }
-        });
+        }
+        return false;
+    }
 
-        Thread s5Thread = new Thread(() -> {
-            try {
-                Thread.sleep(2000);
-                synchronized (lock) {
-                    h = i + j;
-                }
-                updateStateAndRepaint("S5");
-                System.out.println("S5 ejecutado: h = " + h);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+    private CaminoCritico medido() {
+        long[] medidas = duraciones;
+        if (duracionesEnMs()) {
+            medidas = new long[duraciones.length];
+            for (int t = 0; t < medidas.length; t++) {
+                medidas[t] = duraciones[t] / 1_000;
             }
-        });
+        }
+        return new CaminoCritico(definicion, analisis, medidas);
+    }
 
-        Thread s2Thread = new Thread(() -> {
-            try {
-                s1Thread.join(); // Espera a que S1 termine
-                Thread.sleep(2000);
-                synchronized (lock) {
-                    b = a + d;
+    public CompletableFuture<Void> ejecutarGrafo() {
+        return ejecutarGrafo(null);
+    }
+
+    // Con archivoTraza, registra la ejecución y al terminar escribe
+    // <archivoTraza>.json (formato trace_event de Chrome) y <archivoTraza>.csv
+    public CompletableFuture<Void> ejecutarGrafo(String archivoTraza) {
+        EjecutorGrafo ejecutor = new EjecutorGrafo(Runtime.getRuntime().availableProcessors());
+        return ejecutarGrafo(ejecutor, archivoTraza).whenComplete((r, error) -> ejecutor.close());
+    }
+
+    private CompletableFuture<Void> ejecutarGrafo(EjecutorGrafo ejecutor, String archivoTraza) {
+        // Las tareas sin dependencias empiezan juntas; las demás entran al
+        // pool cuando terminan todas sus predecesoras, con solo las aristas
+        // que exigen las condiciones de Bernstein. Entre las listas sale
+        // primero la de mayor nivel inferior (camino crítico primero).
+        int hilos = Runtime.getRuntime().availableProcessors();
+        System.out.println(analisis.informe(20));
+        CaminoCritico estimado = new CaminoCritico(definicion, analisis, costos);
+        System.out.println("Estimado:");
+        System.out.println(estimado.informe("ms", hilos, 20));
+        GrafoTareas grafo = analisis.construir(this::tarea);
+        TrazaEjecucion traza = archivoTraza != null ? new TrazaEjecucion(grafo) : null;
+        long inicio = System.nanoTime();
+        return ejecutor.ejecutar(grafo, estimado.prioridades(), traza).whenComplete((r, error) -> {
+            if (error == null) {
+                ejecucionCompleta = true;
+                System.out.println("\nMedido (total " + (System.nanoTime() - inicio) / 1_000_000 + " ms):");
+                System.out.print(medido().informe(duracionesEnMs() ? "ms" : "µs", hilos, 20));
+                System.out.println(informeValores(20));
+            }
+            if (traza != null) {
+                System.out.print(traza.informe());
+                try {
+                    traza.escribirChrome(archivoTraza + ".json");
+                    traza.escribirCsv(archivoTraza + ".csv");
+                    System.out.println("Traza en '" + archivoTraza + ".json' y '" + archivoTraza + ".csv'");
+                } catch (IOException e) {
+                    System.err.println("No se pudo escribir la traza: " + e.getMessage());
                 }
-                updateStateAndRepaint("S2");
-                System.out.println("S2 ejecutado: b = " + b);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
             }
         });
+    }
 
-        Thread s4Thread = new Thread(() -> {
-            try {
-                s3Thread.join(); // Espera a que S3 termine
-                Thread.sleep(2000);
-                synchronized (lock) {
-                    c = e + g;
+    // Cambia valores iniciales y vuelve a ejecutar solo las tareas
+    // afectadas, con los resultados de la ejecución completa anterior.
+    // Los resultados nuevos se publican en las variables y en la ventana.
+    public CompletableFuture<EjecucionIncremental.Resumen> reejecutar(Cambio cambio) {
+        EjecutorGrafo ejecutor = new EjecutorGrafo(Runtime.getRuntime().availableProcessors());
+        return reejecutar(ejecutor, cambio).whenComplete((resumen, error) -> ejecutor.close());
+    }
+
+    private CompletableFuture<EjecucionIncremental.Resumen> reejecutar(EjecutorGrafo ejecutor, Cambio cambio) {
+        if (!ejecucionCompleta) {
+            throw new IllegalStateException("La reejecución necesita una ejecución completa terminada");
+        }
+        if (incremental == null) {
+            incremental = new EjecucionIncremental(definicion, resultados, t -> {
+                try {
+                    if (costos[t] > 0) {
+                        Thread.sleep(costos[t]);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
-                updateStateAndRepaint("S4");
-                System.out.println("S4 ejecutado: c = " + c);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+            });
+        }
+        return incremental.cambiar(ejecutor, cambio.variables, cambio.valores).whenComplete((resumen, error) -> {
+            if (resumen == null) {
+                return;
             }
+            // Las variables se escriben antes de contar la tarea como
+            // terminada, para que la ventana vea el cambio al muestrear
+            for (int variable : cambio.variables) {
+                variables.escribir(variable, incremental.valor(variable));
+            }
+            for (int t : resumen.cambiadas) {
+                variables.escribir(definicion.destino(t), incremental.valor(definicion.destino(t)));
+                resultados[t] = incremental.resultado(t);
+                ejecutado.set(t, 1);
+                terminadas.incrementAndGet();
+            }
+            System.out.println("\nCambio " + cambio.texto + ":");
+            System.out.println(resumen.texto(definicion.tareas()));
+            for (int k = 0; k < Math.min(resumen.cambiadas.length, MAX_LINEAS_EJECUCION); k++) {
+                int t = resumen.cambiadas[k];
+                System.out.println("  " + definicion.nombre(t) + ": " + definicion.variable(definicion.destino(t))
+                        + " = " + resultados[t]);
+            }
+            System.out.println(informeValores(20));
         });
-
-        // 1. Iniciar todas las tareas que no tienen dependencias
-        s1Thread.start();
-        s3Thread.start();
-        s5Thread.start();
-
-        // 2. Iniciar las tareas que tienen dependencias
-        s2Thread.start();
-        s4Thread.start();
     }
 
-    public static void main(String[] args) {
-        JFrame frame = new JFrame("Grafo de Precedencia - Concurrencia");
-        GrafoPrecedencia panel = new GrafoPrecedencia();
+    // Ejecución completa seguida de los cambios, uno tras otro, todos en el
+    // mismo EjecutorGrafo
+    public CompletableFuture<Void> ejecutar(String archivoTraza, List<Cambio> cambios) {
+        EjecutorGrafo ejecutor = new EjecutorGrafo(Runtime.getRuntime().availableProcessors());
+        CompletableFuture<Void> resultado = ejecutarGrafo(ejecutor, archivoTraza);
+        for (Cambio cambio : cambios) {
+            resultado = resultado.thenCompose(r -> reejecutar(ejecutor, cambio)).thenApply(resumen -> null);
+        }
+        return resultado.whenComplete((r, error) -> ejecutor.close());
+    }
 
-        frame.add(panel);
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.pack();
-        frame.setLocationRelativeTo(null);
-        frame.setVisible(true);
+    static final String USO = "Uso: java GrafoPrecedencia [grafo.txt] [--traza=nombre] [--sin-ventana]"
+            + " [--costo=ms] [--cambiar=f=5,j=1 ...]";
 
-        SwingUtilities.invokeLater(() -> {
-            try {
-                Thread.sleep(1000);
-                panel.ejecutarGrafo();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+    public static void main(String[] args) {
+        String archivo = null;
+        String archivoTraza = null;
+        boolean sinVentana = false;
+        long costoPorDefecto = DURACION_TAREA_MS;
+        List<String> textosCambios = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--cambiar=")) {
+                textosCambios.add(arg.substring("--cambiar=".length()));
+            } else if (arg.startsWith("--traza=")) {
+                archivoTraza = arg.substring("--traza=".length());
+            } else if (arg.equals("--sin-ventana")) {
+                sinVentana = true;
+            } else if (arg.startsWith("--costo=")) {
+                try {
+                    costoPorDefecto = Long.parseLong(arg.substring("--costo=".length()));
+                } catch (NumberFormatException e) {
+                    costoPorDefecto = -1;
+                }
+                if (costoPorDefecto < 0) {
+                    System.err.println("Costo inválido: " + arg);
+                    return;
+                }
+            } else if (arg.startsWith("--") || archivo != null) {
+                System.err.println("Argumento no reconocido: " + arg);
+                System.err.println(USO);
+                return;
+            } else {
+                archivo = arg;
             }
-        });
+        }
+        GrafoPrecedencia grafo;
+        List<Cambio> cambios = new ArrayList<>();
+        try {
+            DefinicionGrafo definicion = archivo != null ? DefinicionGrafo.cargar(archivo)
+                    : DefinicionGrafo.cargar(new StringReader(GRAFO_EJEMPLO));
+            grafo = new GrafoPrecedencia(definicion, costoPorDefecto);
+            for (String texto : textosCambios) {
+                cambios.add(Cambio.leer(definicion, texto));
+            }
+        } catch (IOException e) {
+            System.err.println("Error al leer el grafo: " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Cambio inválido: " + e.getMessage());
+            return;
+        }
+        String traza = archivoTraza;
+        if (!sinVentana) {
+            VistaGrafo.mostrar(grafo, () -> grafo.ejecutar(traza, cambios));
+            return;
+        }
+        // Sin ventana: se ejecuta de inmediato y el proceso termina al
+        // terminar el grafo y los cambios
+        try {
+            grafo.ejecutar(archivoTraza, cambios).join();
+        } catch (CompletionException e) {
+            System.err.println("Error al ejecutar el grafo: " + e.getCause());
+            System.exit(1);
+        }
     }
 }
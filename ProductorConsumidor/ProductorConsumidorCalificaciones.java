@@ -1,228 +1,4167 @@
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 // Clase principal
 public class ProductorConsumidorCalificaciones {
 
-    // Clase Buffer para sincronización manual entre productor y consumidor
-    // Ahora es una clase estática anidada.
-    static class BufferCalificaciones {
-        private final List<Float> buffer;
+    // Contrato común de los buffers de calificaciones: el productor deposita con
+    // producir(), el consumidor retira con consumir() (null cuando ya no habrá
+    // más datos) y el productor avisa el fin con terminarProduccion().
+    interface ColaCalificaciones {
+        void producir(float calificacion) throws InterruptedException;
+
+        Float consumir() throws InterruptedException;
+
+        // Deposita las n primeras calificaciones de origen; bloquea hasta que
+        // todas hayan entrado, pero las mueve por tramos en una sola entrega.
+        void producirLote(float[] origen, int n) throws InterruptedException;
+
+        // Retira hasta max calificaciones en destino y devuelve cuántas tomó
+        // (al menos una), o -1 si la producción terminó y ya no quedan datos.
+        // Si posicion no es null, en posicion[0] queda el número de orden
+        // (desde 0) que tiene en el flujo la primera calificación entregada.
+        int consumirLote(float[] destino, int max, long[] posicion) throws InterruptedException;
+
+        default int consumirLote(float[] destino, int max) throws InterruptedException {
+            return consumirLote(destino, max, null);
+        }
+
+        // Variantes para varios productores que leen rangos distintos de la
+        // entrada: cada calificación lleva su número de orden en el flujo
+        // completo (primera es el de origen[0]) y consumirLote lo devuelve en
+        // posicion. Solo BufferAnilloMPMC lo guarda; con un solo productor el
+        // orden de llegada ya es el del flujo y el número se ignora.
+        default void producir(float calificacion, long posicion) throws InterruptedException {
+            producir(calificacion);
+        }
+
+        default void producirLote(float[] origen, int n, long primera) throws InterruptedException {
+            producirLote(origen, n);
+        }
+
+        // Calificaciones depositadas hasta ahora; tras terminarProduccion() es
+        // el total definitivo del flujo.
+        long totalProducido();
+
+        // Activa la medición de la latencia de entrega (desde que el productor
+        // deposita una calificación hasta que un consumidor la retira). Debe
+        // llamarse antes de arrancar los hilos.
+        void registrarLatenciasEn(HistogramaLatencia histograma);
+
+        // Activa el conteo de esperas por buffer lleno y por buffer vacío.
+        // Debe llamarse antes de arrancar los hilos.
+        void registrarMetricasEn(MetricasCola metricas);
+
+        // Calificaciones que hay ahora en el buffer; con hilos trabajando es
+        // solo una muestra
+        int profundidad();
+
+        void terminarProduccion();
+
+        // Corta el flujo porque falló el lado consumidor: desde ahí los
+        // productores lanzan CancellationException al depositar o al esperar
+        // espacio, y los consumidores reciben null o -1 en cuanto el buffer
+        // queda vacío, sin esperar más datos.
+        void cancelar();
+    }
+
+    // Contrapresión de un buffer: cuántas veces y cuánto tiempo esperó un
+    // productor por espacio (buffer lleno) y un consumidor por datos (buffer
+    // vacío). Solo se actualiza cuando de verdad hay que esperar, así que no
+    // cuesta nada en el camino rápido.
+    static class MetricasCola {
+        final HistogramaLatencia esperaLleno = new HistogramaLatencia();
+        final HistogramaLatencia esperaVacio = new HistogramaLatencia();
+        final LongAdder nanosLleno = new LongAdder();
+        final LongAdder nanosVacio = new LongAdder();
+
+        void registrarEsperaLleno(long desde) {
+            long nanos = System.nanoTime() - desde;
+            esperaLleno.registrar(nanos);
+            nanosLleno.add(nanos);
+        }
+
+        void registrarEsperaVacio(long desde) {
+            long nanos = System.nanoTime() - desde;
+            esperaVacio.registrar(nanos);
+            nanosVacio.add(nanos);
+        }
+    }
+
+    // Marca con el mismo instante n casillas del anillo a partir de indice
+    static void marcarCircular(long[] marcas, int indice, int n, long instante) {
+        int primerTramo = Math.min(n, marcas.length - indice);
+        Arrays.fill(marcas, indice, indice + primerTramo, instante);
+        Arrays.fill(marcas, 0, n - primerTramo, instante);
+    }
+
+    // Registra la latencia de n casillas del anillo a partir de indice
+    static void registrarCircular(HistogramaLatencia latencias, long[] marcas, int indice, int n, long ahora) {
+        for (int k = 0; k < n; k++) {
+            latencias.registrar(ahora - marcas[(indice + k) % marcas.length]);
+        }
+    }
+
+    // Histograma de latencias al estilo HdrHistogram: cubetas logarítmicas en
+    // base 2 con 16 subcubetas cada una (error relativo menor al 7%). Cada hilo
+    // registra en su propio arreglo, así que registrar() no necesita
+    // sincronización; las consultas suman los arreglos de todos los hilos.
+    static class HistogramaLatencia {
+        private static final int SUBCUBETAS = 16;
+        private static final int CUBETAS = (64 - 3) * SUBCUBETAS;
+
+        private final List<long[]> porHilo = new CopyOnWriteArrayList<>();
+        private final ThreadLocal<long[]> local = ThreadLocal.withInitial(() -> {
+            long[] cuentas = new long[CUBETAS];
+            porHilo.add(cuentas);
+            return cuentas;
+        });
+
+        static int indice(long valor) {
+            if (valor < SUBCUBETAS) {
+                return (int) Math.max(valor, 0);
+            }
+            int magnitud = 63 - Long.numberOfLeadingZeros(valor);
+            return (magnitud - 3) * SUBCUBETAS + (int) ((valor >>> (magnitud - 4)) & (SUBCUBETAS - 1));
+        }
+
+        // Límite inferior de los valores que caen en la cubeta
+        static long valor(int indice) {
+            if (indice < SUBCUBETAS) {
+                return indice;
+            }
+            int magnitud = indice / SUBCUBETAS + 3;
+            return (long) (SUBCUBETAS + indice % SUBCUBETAS) << (magnitud - 4);
+        }
+
+        void registrar(long valor) {
+            local.get()[indice(valor)]++;
+        }
+
+        long[] combinadas() {
+            long[] total = new long[CUBETAS];
+            for (long[] cuentas : porHilo) {
+                for (int i = 0; i < CUBETAS; i++) {
+                    total[i] += cuentas[i];
+                }
+            }
+            return total;
+        }
+
+        long total() {
+            long total = 0;
+            for (long cuenta : combinadas()) {
+                total += cuenta;
+            }
+            return total;
+        }
+
+        // Percentil p (0 a 100) de los valores registrados, o 0 si no hay
+        long percentil(double p) {
+            long[] cuentas = combinadas();
+            long total = 0;
+            for (long cuenta : cuentas) {
+                total += cuenta;
+            }
+            long objetivo = Math.max(1, (long) Math.ceil(p / 100.0 * total));
+            long acumulado = 0;
+            for (int i = 0; i < CUBETAS; i++) {
+                acumulado += cuentas[i];
+                if (acumulado >= objetivo) {
+                    return valor(i);
+                }
+            }
+            return 0;
+        }
+    }
+
+    // Copia n valores de origen al anillo a partir de la casilla indice,
+    // dando la vuelta al final del arreglo si hace falta.
+    static void escribirCircular(float[] anillo, int indice, float[] origen, int desde, int n) {
+        int primerTramo = Math.min(n, anillo.length - indice);
+        System.arraycopy(origen, desde, anillo, indice, primerTramo);
+        System.arraycopy(origen, desde + primerTramo, anillo, 0, n - primerTramo);
+    }
+
+    // Copia n valores del anillo, a partir de la casilla indice, hacia destino.
+    static void leerCircular(float[] anillo, int indice, float[] destino, int desde, int n) {
+        int primerTramo = Math.min(n, anillo.length - indice);
+        System.arraycopy(anillo, indice, destino, desde, primerTramo);
+        System.arraycopy(anillo, 0, destino, desde + primerTramo, n - primerTramo);
+    }
+
+    static CancellationException flujoCancelado() {
+        return new CancellationException("el flujo de calificaciones se canceló");
+    }
+
+    // Estrategia de espera de los buffers sin bloqueo: primero gira, luego cede
+    // el procesador y si la espera se alarga se estaciona brevemente.
+    static void esperarTurno(int intento) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (intento < 64) {
+            Thread.onSpinWait();
+        } else if (intento < 128) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000L);
+        }
+    }
+
+    // Secuencia (cabeza o cola) rellenada para que no comparta línea de caché
+    // con la secuencia del otro extremo.
+    static final class SecuenciaRellenada extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+
+        // Última posición vista del extremo contrario; solo la usa el dueño
+        long cache;
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    // Buffer circular de float protegido por un ReentrantLock, con una
+    // condición por extremo: los productores esperan en noLleno y los
+    // consumidores en noVacio. A diferencia de synchronized + wait(), un hilo
+    // virtual que espera en una Condition libera su hilo portador.
+    static class BufferCalificaciones implements ColaCalificaciones {
+        private final float[] buffer;
         private final int capacidad;
+        private final ReentrantLock cerrojo = new ReentrantLock();
+        private final Condition noLleno = cerrojo.newCondition();
+        private final Condition noVacio = cerrojo.newCondition();
+        private int inicio = 0;
+        private int tamano = 0;
+        private long retirados = 0;
         private boolean produccionTerminada = false;
+        private boolean cancelado = false;
+        private long[] marcas; // instante de depósito de cada casilla, si se mide
+        private HistogramaLatencia latencias;
+        private MetricasCola metricas;
+
+        public BufferCalificaciones(int capacidad) {
+            this.buffer = new float[capacidad];
+            this.capacidad = capacidad;
+        }
+
+        @Override
+        public void registrarLatenciasEn(HistogramaLatencia histograma) {
+            this.latencias = histograma;
+            this.marcas = new long[capacidad];
+        }
+
+        @Override
+        public void registrarMetricasEn(MetricasCola metricas) {
+            this.metricas = metricas;
+        }
+
+        // Esperar (con el cerrojo tomado) mientras el buffer esté lleno
+        private void esperarEspacio() throws InterruptedException {
+            if (tamano == capacidad && !cancelado) {
+                long inicioEspera = System.nanoTime();
+                do {
+                    noLleno.await();
+                } while (tamano == capacidad && !cancelado);
+                if (metricas != null) {
+                    metricas.registrarEsperaLleno(inicioEspera);
+                }
+            }
+            if (cancelado) {
+                throw flujoCancelado();
+            }
+        }
+
+        // Esperar (con el cerrojo tomado) mientras el buffer esté vacío y la
+        // producción no haya terminado
+        private void esperarDatos() throws InterruptedException {
+            if (tamano > 0 || produccionTerminada || cancelado) {
+                return;
+            }
+            long inicioEspera = System.nanoTime();
+            do {
+                noVacio.await();
+            } while (tamano == 0 && !produccionTerminada && !cancelado);
+            if (metricas != null) {
+                metricas.registrarEsperaVacio(inicioEspera);
+            }
+        }
+
+        // Método para que el productor añada una calificación al buffer
+        @Override
+        public void producir(float calificacion) throws InterruptedException {
+            cerrojo.lockInterruptibly();
+            try {
+                // Esperar si el buffer está lleno
+                esperarEspacio();
+                buffer[(inicio + tamano) % capacidad] = calificacion;
+                if (marcas != null) {
+                    marcas[(inicio + tamano) % capacidad] = System.nanoTime();
+                }
+                tamano++;
+                // Solo hay consumidores esperando si el buffer estaba vacío
+                if (tamano == 1) {
+                    noVacio.signalAll();
+                }
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        // Método para que el consumidor obtenga una calificación del buffer
+        @Override
+        public Float consumir() throws InterruptedException {
+            cerrojo.lockInterruptibly();
+            try {
+                // Esperar si el buffer está vacío y la producción no ha terminado
+                esperarDatos();
+
+                // Si la producción ha terminado y el buffer está vacío, retornar null
+                if (tamano == 0) {
+                    return null;
+                }
+
+                // Consumir el primer elemento del buffer
+                float calificacion = buffer[inicio];
+                if (latencias != null) {
+                    latencias.registrar(System.nanoTime() - marcas[inicio]);
+                }
+                inicio = (inicio + 1) % capacidad;
+                tamano--;
+                retirados++;
+                // Solo hay productores esperando si el buffer estaba lleno
+                if (tamano == capacidad - 1) {
+                    noLleno.signalAll();
+                }
+                return calificacion;
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        // Añade un lote completo; cada tramo que cabe se copia con una sola
+        // adquisición del cerrojo
+        @Override
+        public void producirLote(float[] origen, int n) throws InterruptedException {
+            cerrojo.lockInterruptibly();
+            try {
+                int enviados = 0;
+                while (enviados < n) {
+                    esperarEspacio();
+                    int tramo = Math.min(n - enviados, capacidad - tamano);
+                    escribirCircular(buffer, (inicio + tamano) % capacidad, origen, enviados, tramo);
+                    if (marcas != null) {
+                        marcarCircular(marcas, (inicio + tamano) % capacidad, tramo, System.nanoTime());
+                    }
+                    boolean estabaVacio = tamano == 0;
+                    tamano += tramo;
+                    enviados += tramo;
+                    if (estabaVacio) {
+                        noVacio.signalAll();
+                    }
+                }
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        // Retira todo lo disponible (hasta max) en una sola entrega
+        @Override
+        public int consumirLote(float[] destino, int max, long[] posicion) throws InterruptedException {
+            cerrojo.lockInterruptibly();
+            try {
+                esperarDatos();
+                if (tamano == 0) {
+                    return -1;
+                }
+                int tomados = Math.min(max, tamano);
+                leerCircular(buffer, inicio, destino, 0, tomados);
+                if (latencias != null) {
+                    registrarCircular(latencias, marcas, inicio, tomados, System.nanoTime());
+                }
+                boolean estabaLleno = tamano == capacidad;
+                inicio = (inicio + tomados) % capacidad;
+                tamano -= tomados;
+                if (posicion != null) {
+                    posicion[0] = retirados;
+                }
+                retirados += tomados;
+                if (estabaLleno) {
+                    noLleno.signalAll();
+                }
+                return tomados;
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        @Override
+        public long totalProducido() {
+            cerrojo.lock();
+            try {
+                return retirados + tamano;
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        @Override
+        public int profundidad() {
+            cerrojo.lock();
+            try {
+                return tamano;
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        // Método para notificar al consumidor que el productor ha terminado
+        @Override
+        public void terminarProduccion() {
+            cerrojo.lock();
+            try {
+                this.produccionTerminada = true;
+                // Despertar a cualquier hilo consumidor que esté esperando
+                noVacio.signalAll();
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        @Override
+        public void cancelar() {
+            cerrojo.lock();
+            try {
+                cancelado = true;
+                noVacio.signalAll();
+                noLleno.signalAll();
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+    }
+
+    // Buffer circular sin bloqueo para un solo productor y un solo consumidor.
+    // Cada extremo avanza su propia secuencia y solo lee la del otro cuando su
+    // copia en caché indica que el buffer está lleno o vacío.
+    static class BufferAnilloSPSC implements ColaCalificaciones {
+        private final float[] datos;
+        private final int capacidad;
+        private final SecuenciaRellenada cabeza = new SecuenciaRellenada(); // siguiente posición a leer
+        private final SecuenciaRellenada cola = new SecuenciaRellenada(); // siguiente posición a escribir
+        private volatile boolean produccionTerminada = false;
+        private volatile boolean cancelado = false;
+        private long[] marcas;
+        private HistogramaLatencia latencias;
+        private MetricasCola metricas;
+
+        public BufferAnilloSPSC(int capacidad) {
+            this.datos = new float[capacidad];
+            this.capacidad = capacidad;
+        }
+
+        @Override
+        public void registrarLatenciasEn(HistogramaLatencia histograma) {
+            this.latencias = histograma;
+            this.marcas = new long[capacidad];
+        }
+
+        @Override
+        public void registrarMetricasEn(MetricasCola metricas) {
+            this.metricas = metricas;
+        }
+
+        @Override
+        public void producir(float calificacion) throws InterruptedException {
+            if (cancelado) {
+                throw flujoCancelado();
+            }
+            long posicion = cola.get();
+            int intento = 0;
+            long inicioEspera = 0;
+            while (posicion - cola.cache >= capacidad) {
+                cola.cache = cabeza.get();
+                if (posicion - cola.cache >= capacidad) {
+                    if (cancelado) {
+                        throw flujoCancelado();
+                    }
+                    if (intento == 0) {
+                        inicioEspera = System.nanoTime();
+                    }
+                    esperarTurno(intento++);
+                }
+            }
+            if (intento > 0 && metricas != null) {
+                metricas.registrarEsperaLleno(inicioEspera);
+            }
+            datos[(int) (posicion % capacidad)] = calificacion;
+            if (marcas != null) {
+                marcas[(int) (posicion % capacidad)] = System.nanoTime();
+            }
+            // Publicar el dato antes de que el consumidor vea la nueva cola
+            cola.lazySet(posicion + 1);
+        }
+
+        @Override
+        public Float consumir() throws InterruptedException {
+            long posicion = cabeza.get();
+            int intento = 0;
+            long inicioEspera = 0;
+            while (posicion >= cabeza.cache) {
+                // Leer la bandera antes que la cola: si ya terminó, la cola es definitiva
+                boolean terminada = produccionTerminada;
+                cabeza.cache = cola.get();
+                if (posicion < cabeza.cache) {
+                    break;
+                }
+                if (terminada || cancelado) {
+                    return null;
+                }
+                if (intento == 0) {
+                    inicioEspera = System.nanoTime();
+                }
+                esperarTurno(intento++);
+            }
+            if (intento > 0 && metricas != null) {
+                metricas.registrarEsperaVacio(inicioEspera);
+            }
+            float calificacion = datos[(int) (posicion % capacidad)];
+            if (latencias != null) {
+                latencias.registrar(System.nanoTime() - marcas[(int) (posicion % capacidad)]);
+            }
+            cabeza.lazySet(posicion + 1);
+            return calificacion;
+        }
+
+        @Override
+        public void producirLote(float[] origen, int n) throws InterruptedException {
+            if (cancelado) {
+                throw flujoCancelado();
+            }
+            long posicion = cola.get();
+            int enviados = 0;
+            int intento = 0;
+            long inicioEspera = 0;
+            while (enviados < n) {
+                long libres = capacidad - (posicion - cola.cache);
+                if (libres == 0) {
+                    cola.cache = cabeza.get();
+                    libres = capacidad - (posicion - cola.cache);
+                    if (libres == 0) {
+                        if (cancelado) {
+                            throw flujoCancelado();
+                        }
+                        if (intento == 0) {
+                            inicioEspera = System.nanoTime();
+                        }
+                        esperarTurno(intento++);
+                        continue;
+                    }
+                }
+                if (intento > 0 && metricas != null) {
+                    metricas.registrarEsperaLleno(inicioEspera);
+                }
+                int tramo = (int) Math.min(n - enviados, libres);
+                escribirCircular(datos, (int) (posicion % capacidad), origen, enviados, tramo);
+                if (marcas != null) {
+                    marcarCircular(marcas, (int) (posicion % capacidad), tramo, System.nanoTime());
+                }
+                posicion += tramo;
+                enviados += tramo;
+                intento = 0;
+                cola.lazySet(posicion);
+            }
+        }
+
+        @Override
+        public int consumirLote(float[] destino, int max, long[] posicionLote) throws InterruptedException {
+            long posicion = cabeza.get();
+            int intento = 0;
+            long inicioEspera = 0;
+            while (posicion >= cabeza.cache) {
+                boolean terminada = produccionTerminada;
+                cabeza.cache = cola.get();
+                if (posicion < cabeza.cache) {
+                    break;
+                }
+                if (terminada || cancelado) {
+                    return -1;
+                }
+                if (intento == 0) {
+                    inicioEspera = System.nanoTime();
+                }
+                esperarTurno(intento++);
+            }
+            if (intento > 0 && metricas != null) {
+                metricas.registrarEsperaVacio(inicioEspera);
+            }
+            int tomados = (int) Math.min(max, cabeza.cache - posicion);
+            leerCircular(datos, (int) (posicion % capacidad), destino, 0, tomados);
+            if (latencias != null) {
+                registrarCircular(latencias, marcas, (int) (posicion % capacidad), tomados, System.nanoTime());
+            }
+            cabeza.lazySet(posicion + tomados);
+            if (posicionLote != null) {
+                posicionLote[0] = posicion;
+            }
+            return tomados;
+        }
+
+        @Override
+        public long totalProducido() {
+            return cola.get();
+        }
+
+        @Override
+        public int profundidad() {
+            return (int) Math.max(0, cola.get() - cabeza.get());
+        }
+
+        @Override
+        public void terminarProduccion() {
+            produccionTerminada = true;
+        }
+
+        @Override
+        public void cancelar() {
+            cancelado = true;
+        }
+    }
+
+    // Buffer circular sin bloqueo para varios productores y varios consumidores
+    // (cola acotada de Vyukov). Cada casilla lleva su número de secuencia: vale
+    // 2 * posicion cuando está libre para escribir y 2 * posicion + 1 cuando
+    // tiene dato; el factor 2 distingue ambos estados incluso con capacidad 1.
+    static class BufferAnilloMPMC implements ColaCalificaciones {
+        private final float[] datos;
+        // Número de orden en el flujo de la calificación de cada casilla; con
+        // varios productores no coincide con el orden de llegada
+        private final long[] posiciones;
+        private final AtomicLongArray secuencias;
+        private final int capacidad;
+        private final SecuenciaRellenada cabeza = new SecuenciaRellenada();
+        private final SecuenciaRellenada cola = new SecuenciaRellenada();
+        private volatile boolean produccionTerminada = false;
+        private volatile boolean cancelado = false;
+        private long[] marcas;
+        private HistogramaLatencia latencias;
+        private MetricasCola metricas;
+
+        @Override
+        public void registrarLatenciasEn(HistogramaLatencia histograma) {
+            this.latencias = histograma;
+            this.marcas = new long[capacidad];
+        }
+
+        @Override
+        public void registrarMetricasEn(MetricasCola metricas) {
+            this.metricas = metricas;
+        }
+
+        public BufferAnilloMPMC(int capacidad) {
+            this.datos = new float[capacidad];
+            this.posiciones = new long[capacidad];
+            this.secuencias = new AtomicLongArray(capacidad);
+            this.capacidad = capacidad;
+            for (int i = 0; i < capacidad; i++) {
+                secuencias.set(i, 2L * i);
+            }
+        }
+
+        @Override
+        public void producir(float calificacion) throws InterruptedException {
+            producir(calificacion, -1);
+        }
+
+        // Con posicionFlujo = -1 el número de orden es el de llegada
+        @Override
+        public void producir(float calificacion, long posicionFlujo) throws InterruptedException {
+            if (cancelado) {
+                throw flujoCancelado();
+            }
+            int intento = 0;
+            long inicioEspera = 0;
+            while (true) {
+                long posicion = cola.get();
+                int indice = (int) (posicion % capacidad);
+                long diferencia = secuencias.get(indice) - 2 * posicion;
+                if (diferencia == 0) {
+                    if (cola.compareAndSet(posicion, posicion + 1)) {
+                        datos[indice] = calificacion;
+                        posiciones[indice] = posicionFlujo < 0 ? posicion : posicionFlujo;
+                        if (marcas != null) {
+                            marcas[indice] = System.nanoTime();
+                        }
+                        secuencias.lazySet(indice, 2 * posicion + 1);
+                        if (intento > 0 && metricas != null) {
+                            metricas.registrarEsperaLleno(inicioEspera);
+                        }
+                        return;
+                    }
+                } else if (diferencia < 0) {
+                    // Casilla aún ocupada por la vuelta anterior: buffer lleno
+                    if (cancelado) {
+                        throw flujoCancelado();
+                    }
+                    if (intento == 0) {
+                        inicioEspera = System.nanoTime();
+                    }
+                    esperarTurno(intento++);
+                }
+            }
+        }
+
+        @Override
+        public Float consumir() throws InterruptedException {
+            int intento = 0;
+            long inicioEspera = 0;
+            while (true) {
+                long posicion = cabeza.get();
+                int indice = (int) (posicion % capacidad);
+                long diferencia = secuencias.get(indice) - (2 * posicion + 1);
+                if (diferencia == 0) {
+                    if (cabeza.compareAndSet(posicion, posicion + 1)) {
+                        float calificacion = datos[indice];
+                        if (latencias != null) {
+                            latencias.registrar(System.nanoTime() - marcas[indice]);
+                        }
+                        secuencias.lazySet(indice, 2 * (posicion + capacidad));
+                        if (intento > 0 && metricas != null) {
+                            metricas.registrarEsperaVacio(inicioEspera);
+                        }
+                        return calificacion;
+                    }
+                } else if (diferencia < 0) {
+                    // Buffer vacío: si ya no habrá más datos y nadie reservó
+                    // esta posición, terminar
+                    if (cancelado || (produccionTerminada && cola.get() <= posicion)) {
+                        return null;
+                    }
+                    if (intento == 0) {
+                        inicioEspera = System.nanoTime();
+                    }
+                    esperarTurno(intento++);
+                }
+            }
+        }
+
+        @Override
+        public void producirLote(float[] origen, int n) throws InterruptedException {
+            producirLote(origen, n, -1);
+        }
+
+        // Reserva de una vez el tramo contiguo de casillas libres que empieza
+        // en la cola y lo publica casilla por casilla. Con primera = -1 el
+        // número de orden es el de llegada.
+        @Override
+        public void producirLote(float[] origen, int n, long primera) throws InterruptedException {
+            if (cancelado) {
+                throw flujoCancelado();
+            }
+            int enviados = 0;
+            int intento = 0;
+            long inicioEspera = 0;
+            while (enviados < n) {
+                long posicion = cola.get();
+                int tramo = 0;
+                int limite = Math.min(n - enviados, capacidad);
+                while (tramo < limite
+                        && secuencias.get((int) ((posicion + tramo) % capacidad)) == 2 * (posicion + tramo)) {
+                    tramo++;
+                }
+                if (tramo == 0) {
+                    if (secuencias.get((int) (posicion % capacidad)) < 2 * posicion) {
+                        if (cancelado) {
+                            throw flujoCancelado();
+                        }
+                        if (intento == 0) {
+                            inicioEspera = System.nanoTime();
+                        }
+                        esperarTurno(intento++);
+                    }
+                    continue;
+                }
+                if (cola.compareAndSet(posicion, posicion + tramo)) {
+                    long instante = marcas != null ? System.nanoTime() : 0;
+                    for (int k = 0; k < tramo; k++) {
+                        int indice = (int) ((posicion + k) % capacidad);
+                        datos[indice] = origen[enviados + k];
+                        posiciones[indice] = primera < 0 ? posicion + k : primera + enviados + k;
+                        if (marcas != null) {
+                            marcas[indice] = instante;
+                        }
+                        secuencias.lazySet(indice, 2 * (posicion + k) + 1);
+                    }
+                    enviados += tramo;
+                    if (intento > 0 && metricas != null) {
+                        metricas.registrarEsperaLleno(inicioEspera);
+                    }
+                    intento = 0;
+                }
+            }
+        }
+
+        // Reserva de una vez el tramo contiguo de casillas con dato que empieza
+        // en la cabeza y las libera al copiarlas. El tramo también es contiguo
+        // en el flujo: acaba donde otro productor intercaló su lote, para que
+        // posicionLote[0] + k siga siendo el número de orden de destino[k].
+        @Override
+        public int consumirLote(float[] destino, int max, long[] posicionLote) throws InterruptedException {
+            int intento = 0;
+            long inicioEspera = 0;
+            while (true) {
+                long posicion = cabeza.get();
+                int tramo = 0;
+                int limite = Math.min(max, capacidad);
+                long primera = 0;
+                while (tramo < limite) {
+                    int indice = (int) ((posicion + tramo) % capacidad);
+                    if (secuencias.get(indice) != 2 * (posicion + tramo) + 1) {
+                        break;
+                    }
+                    if (tramo == 0) {
+                        primera = posiciones[indice];
+                    } else if (posiciones[indice] != primera + tramo) {
+                        break;
+                    }
+                    tramo++;
+                }
+                if (tramo == 0) {
+                    if (secuencias.get((int) (posicion % capacidad)) < 2 * posicion + 1) {
+                        if (cancelado || (produccionTerminada && cola.get() <= posicion)) {
+                            return -1;
+                        }
+                        if (intento == 0) {
+                            inicioEspera = System.nanoTime();
+                        }
+                        esperarTurno(intento++);
+                    }
+                    continue;
+                }
+                if (cabeza.compareAndSet(posicion, posicion + tramo)) {
+                    long ahora = latencias != null ? System.nanoTime() : 0;
+                    for (int k = 0; k < tramo; k++) {
+                        int indice = (int) ((posicion + k) % capacidad);
+                        destino[k] = datos[indice];
+                        if (latencias != null) {
+                            latencias.registrar(ahora - marcas[indice]);
+                        }
+                        secuencias.lazySet(indice, 2 * (posicion + k + capacidad));
+                    }
+                    if (posicionLote != null) {
+                        posicionLote[0] = primera;
+                    }
+                    if (intento > 0 && metricas != null) {
+                        metricas.registrarEsperaVacio(inicioEspera);
+                    }
+                    return tramo;
+                }
+            }
+        }
+
+        @Override
+        public long totalProducido() {
+            return cola.get();
+        }
+
+        @Override
+        public int profundidad() {
+            return (int) Math.min(capacidad, Math.max(0, cola.get() - cabeza.get()));
+        }
+
+        @Override
+        public void terminarProduccion() {
+            produccionTerminada = true;
+        }
+
+        @Override
+        public void cancelar() {
+            cancelado = true;
+        }
+    }
+
+    // Origen de calificaciones por lotes para el productor: el archivo de texto
+    // mapeado en memoria o el formato binario por columnas. Se elige según la
+    // firma del archivo.
+    interface FuenteCalificaciones extends Closeable {
+        // Llena destino con las siguientes calificaciones; devuelve cuántas
+        // leyó o -1 si ya no quedan más.
+        int leer(float[] destino) throws IOException;
+
+        // Byte del archivo justo después de la última calificación entregada:
+        // un lector abierto desde ahí sigue con la siguiente
+        long posicion();
+
+        // Lee el rango de bytes [inicio, fin); fin = -1 indica hasta el final
+        static FuenteCalificaciones abrir(String archivo, long inicio, long fin) throws IOException {
+            if (LectorCalificacionesBinario.esBinario(archivo)) {
+                return new LectorCalificacionesBinario(archivo, inicio, fin);
+            }
+            return new LectorCalificacionesMapeado(archivo, inicio, fin);
+        }
+
+        // Rangos de bytes de tamaño similar que empiezan en un registro
+        static long[] dividirEnRangos(String archivo, int partes) throws IOException {
+            if (LectorCalificacionesBinario.esBinario(archivo)) {
+                return LectorCalificacionesBinario.dividirEnRangos(archivo, partes);
+            }
+            return LectorCalificacionesMapeado.dividirEnRangos(archivo, partes);
+        }
+
+        // Registros del rango de bytes [inicio, fin) que devuelve dividirEnRangos
+        static long contarRegistros(String archivo, long inicio, long fin) throws IOException {
+            if (LectorCalificacionesBinario.esBinario(archivo)) {
+                return LectorCalificacionesBinario.contarRegistros(archivo, inicio, fin);
+            }
+            return LectorCalificacionesMapeado.contarRegistros(archivo, inicio, fin);
+        }
+    }
+
+    // Lector de calificaciones que mapea el archivo en memoria y convierte los
+    // bytes de cada línea directamente a float, sin crear un String por línea.
+    // El archivo se recorre en ventanas para admitir archivos de varios GB.
+    static class LectorCalificacionesMapeado implements FuenteCalificaciones {
+        private static final long TAMANO_VENTANA = 256L * 1024 * 1024;
+        // Camino rápido: mantisa y potencia de 10 exactas en float (mantisa
+        // menor que 2^24, hasta 10^10). Así la división en double seguida del
+        // paso a float redondea una sola vez en la práctica (53 >= 2 * 24 + 2
+        // bits) y da el mismo float que Float.parseFloat.
+        private static final double[] POTENCIAS_10 = new double[11];
+        private static final long MAX_MANTISA_EXACTA = 1L << 24;
+
+        static {
+            POTENCIAS_10[0] = 1.0;
+            for (int i = 1; i < POTENCIAS_10.length; i++) {
+                POTENCIAS_10[i] = POTENCIAS_10[i - 1] * 10.0;
+            }
+        }
+
+        private final FileChannel canal;
+        private final long fin;
+        private MappedByteBuffer ventana;
+        private long base; // desplazamiento en el archivo del inicio de la ventana
+        private int posicion; // posición de lectura dentro de la ventana
+        private int limite;
+
+        public LectorCalificacionesMapeado(String archivo) throws IOException {
+            this(archivo, 0, -1);
+        }
+
+        // Lee solo el rango de bytes [inicio, fin); fin = -1 indica hasta el
+        // final del archivo. El rango debe empezar al inicio de una línea.
+        public LectorCalificacionesMapeado(String archivo, long inicio, long fin) throws IOException {
+            this.canal = FileChannel.open(Paths.get(archivo), StandardOpenOption.READ);
+            this.fin = fin < 0 ? canal.size() : fin;
+            mapear(inicio);
+        }
+
+        // Divide el archivo en partes rangos de tamaño similar cuyos límites
+        // caen justo después de un salto de línea. Devuelve partes + 1
+        // desplazamientos: el rango i es [limites[i], limites[i + 1]).
+        static long[] dividirEnRangos(String archivo, int partes) throws IOException {
+            try (FileChannel canal = FileChannel.open(Paths.get(archivo), StandardOpenOption.READ)) {
+                long tamano = canal.size();
+                long[] limites = new long[partes + 1];
+                limites[partes] = tamano;
+                ByteBuffer bloque = ByteBuffer.allocate(4096);
+                for (int i = 1; i < partes; i++) {
+                    long posicion = Math.max(tamano * i / partes, limites[i - 1]);
+                    // Si el corte cae a mitad de una línea, avanzar hasta la siguiente
+                    boolean alineado = posicion == 0 || posicion >= tamano;
+                    if (!alineado) {
+                        bloque.clear().limit(1);
+                        canal.read(bloque, posicion - 1);
+                        alineado = bloque.get(0) == '\n';
+                    }
+                    while (!alineado) {
+                        bloque.clear();
+                        int leidos = canal.read(bloque, posicion);
+                        if (leidos <= 0) {
+                            posicion = tamano;
+                            break;
+                        }
+                        int k = 0;
+                        while (k < leidos && bloque.get(k) != '\n') {
+                            k++;
+                        }
+                        posicion += k;
+                        if (k < leidos) {
+                            posicion++;
+                            alineado = true;
+                        }
+                    }
+                    limites[i] = posicion;
+                }
+                return limites;
+            }
+        }
+
+        // Líneas del rango [inicio, fin), que empieza al inicio de una línea:
+        // cuenta los fines de línea (\r\n una sola vez) y una línea final sin
+        // terminar. Cada línea es un registro para leer().
+        static long contarRegistros(String archivo, long inicio, long fin) throws IOException {
+            try (FileChannel canal = FileChannel.open(Paths.get(archivo), StandardOpenOption.READ)) {
+                ByteBuffer bloque = ByteBuffer.allocateDirect(64 * 1024);
+                long lineas = 0;
+                byte anterior = '\n';
+                long posicion = inicio;
+                while (posicion < fin) {
+                    bloque.clear().limit((int) Math.min(bloque.capacity(), fin - posicion));
+                    int leidos = canal.read(bloque, posicion);
+                    if (leidos <= 0) {
+                        break;
+                    }
+                    for (int k = 0; k < leidos; k++) {
+                        byte b = bloque.get(k);
+                        if (b == '\n' ? anterior != '\r' : b == '\r') {
+                            lineas++;
+                        }
+                        anterior = b;
+                    }
+                    posicion += leidos;
+                }
+                return anterior == '\n' || anterior == '\r' ? lineas : lineas + 1;
+            }
+        }
+
+        // Fin de la última línea completa a partir de desde (justo después de
+        // su salto de línea), desde si todavía no hay ninguna, o -1 si el
+        // archivo ya es más corto que desde
+        static long finDeLineasCompletas(String archivo, long desde) throws IOException {
+            try (FileChannel canal = FileChannel.open(Paths.get(archivo), StandardOpenOption.READ)) {
+                long tamano = canal.size();
+                if (tamano < desde) {
+                    return -1;
+                }
+                ByteBuffer bloque = ByteBuffer.allocate(4096);
+                long fin = tamano;
+                while (fin > desde) {
+                    int n = (int) Math.min(bloque.capacity(), fin - desde);
+                    bloque.clear().limit(n);
+                    while (bloque.hasRemaining() && canal.read(bloque, fin - n + bloque.position()) > 0) {
+                        // leer el bloque completo
+                    }
+                    for (int k = bloque.position() - 1; k >= 0; k--) {
+                        if (bloque.get(k) == '\n') {
+                            return fin - n + k + 1;
+                        }
+                    }
+                    fin -= n;
+                }
+                return desde;
+            }
+        }
+
+        private void mapear(long desde) throws IOException {
+            base = desde;
+            limite = (int) Math.min(TAMANO_VENTANA, fin - desde);
+            ventana = canal.map(FileChannel.MapMode.READ_ONLY, desde, limite);
+            posicion = 0;
+        }
+
+        private static boolean esFinDeLinea(byte b) {
+            return b == '\n' || b == '\r';
+        }
+
+        // Espacios y caracteres de control que String.trim() quita de los
+        // extremos de una línea
+        private static boolean esEspacio(byte b) {
+            return b >= 0 && b <= ' ' && !esFinDeLinea(b);
+        }
+
+        // Misma gramática que el lector original (readLine + trim +
+        // Float.parseFloat): una calificación por línea, terminada en \n, \r
+        // o \r\n, con espacios opcionales alrededor. Una línea vacía o con
+        // más de un número lanza NumberFormatException.
+        @Override
+        public int leer(float[] destino) throws IOException {
+            int leidos = 0;
+            while (leidos < destino.length) {
+                if (posicion == limite) {
+                    if (base + limite >= fin) {
+                        break;
+                    }
+                    mapear(base + limite);
+                    continue;
+                }
+
+                int inicio = posicion;
+                while (posicion < limite && esEspacio(ventana.get(posicion))) {
+                    posicion++;
+                }
+                int inicioNumero = posicion;
+                boolean negativo = false;
+                long mantisa = 0;
+                int digitos = 0;
+                int decimales = -1; // -1 mientras no aparezca el punto
+                boolean formatoSimple = true; // sin exponente, espacios ni otros símbolos
+                while (posicion < limite) {
+                    byte b = ventana.get(posicion);
+                    if (b >= '0' && b <= '9') {
+                        mantisa = mantisa * 10 + (b - '0');
+                        digitos++;
+                        if (decimales >= 0) {
+                            decimales++;
+                        }
+                    } else if (b == '.' && decimales < 0) {
+                        decimales = 0;
+                    } else if ((b == '-' || b == '+') && posicion == inicioNumero) {
+                        negativo = b == '-';
+                    } else if (esFinDeLinea(b)) {
+                        break;
+                    } else {
+                        formatoSimple = false;
+                    }
+                    posicion++;
+                }
+
+                // La línea quedó cortada por el final de la ventana (o solo
+                // entró el \r de un \r\n): volver a mapear a partir de su inicio
+                boolean cortada = posicion == limite
+                        || (ventana.get(posicion) == '\r' && posicion + 1 == limite);
+                if (cortada && base + limite < fin) {
+                    mapear(base + inicio);
+                    continue;
+                }
+                int finLinea = posicion;
+                if (posicion < limite) {
+                    boolean retorno = ventana.get(posicion++) == '\r';
+                    if (retorno && posicion < limite && ventana.get(posicion) == '\n') {
+                        posicion++;
+                    }
+                }
+
+                float valor;
+                if (formatoSimple && digitos > 0 && digitos <= 18 && mantisa < MAX_MANTISA_EXACTA
+                        && decimales < POTENCIAS_10.length) {
+                    valor = (float) (mantisa / POTENCIAS_10[Math.max(decimales, 0)]);
+                    if (negativo) {
+                        valor = -valor;
+                    }
+                } else {
+                    // Exponente, más de 7 cifras significativas, espacios al final, línea
+                    // vacía o texto inválido: caso raro, se delega en el parser
+                    // estándar (que valida el formato)
+                    byte[] texto = new byte[finLinea - inicio];
+                    ventana.get(inicio, texto);
+                    valor = Float.parseFloat(new String(texto, StandardCharsets.US_ASCII).trim());
+                }
+                destino[leidos++] = valor;
+            }
+            return leidos == 0 ? -1 : leidos;
+        }
+
+        @Override
+        public long posicion() {
+            return base + posicion;
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+
+    // Codificación de la columna de calificaciones del formato binario
+    enum CodificacionBinaria {
+        DECIMAS(1, Short.BYTES), // calificación × 10 en un short
+        FLOTANTE(2, Float.BYTES); // float tal cual
+
+        final byte codigo;
+        final int ancho;
+
+        CodificacionBinaria(int codigo, int ancho) {
+            this.codigo = (byte) codigo;
+            this.ancho = ancho;
+        }
+
+        static CodificacionBinaria deCodigo(byte codigo) throws IOException {
+            for (CodificacionBinaria codificacion : values()) {
+                if (codificacion.codigo == codigo) {
+                    return codificacion;
+                }
+            }
+            throw new IOException("Codificación binaria desconocida: " + codigo);
+        }
+    }
+
+    // Lector del formato binario por columnas (little-endian):
+    //   bytes 0-3    firma "CALB"
+    //   byte 4       versión (1)
+    //   byte 5       codificación (1 = décimas en short, 2 = float)
+    //   bytes 6-7    reservados
+    //   bytes 8-15   número de registros (long)
+    //   byte 16...   una columna de registros de ancho fijo
+    // Lee la columna por bloques con un ByteBuffer directo; no hay nada que
+    // analizar, solo convertir de décimas a float.
+    static class LectorCalificacionesBinario implements FuenteCalificaciones {
+        static final String EXTENSION = ".calb";
+        static final byte[] FIRMA = {'C', 'A', 'L', 'B'};
+        static final byte VERSION = 1;
+        static final int CABECERA = 16;
+        private static final int TAMANO_BLOQUE = 64 * 1024;
+
+        private final FileChannel canal;
+        private final CodificacionBinaria codificacion;
+        private final ByteBuffer bloque = ByteBuffer.allocateDirect(TAMANO_BLOQUE).order(ByteOrder.LITTLE_ENDIAN);
+        private final long fin;
+        private long posicion; // siguiente byte del archivo a leer
+
+        public LectorCalificacionesBinario(String archivo) throws IOException {
+            this(archivo, 0, -1);
+        }
+
+        // Lee solo los registros del rango de bytes [inicio, fin); un inicio
+        // dentro de la cabecera equivale al primer registro
+        public LectorCalificacionesBinario(String archivo, long inicio, long fin) throws IOException {
+            this.canal = FileChannel.open(Paths.get(archivo), StandardOpenOption.READ);
+            try {
+                ByteBuffer cabecera = leerCabecera(canal);
+                this.codificacion = CodificacionBinaria.deCodigo(cabecera.get(5));
+                long finDatos = CABECERA + cabecera.getLong(8) * codificacion.ancho;
+                if (canal.size() < finDatos) {
+                    throw new IOException("Archivo binario truncado: " + archivo);
+                }
+                this.posicion = Math.max(inicio, CABECERA);
+                this.fin = fin < 0 ? finDatos : Math.min(fin, finDatos);
+                bloque.limit(0);
+            } catch (IOException e) {
+                canal.close();
+                throw e;
+            }
+        }
+
+        static boolean esBinario(String archivo) throws IOException {
+            if (!new File(archivo).isFile()) {
+                return false;
+            }
+            try (FileChannel canal = FileChannel.open(Paths.get(archivo), StandardOpenOption.READ)) {
+                ByteBuffer firma = ByteBuffer.allocate(FIRMA.length);
+                canal.read(firma, 0);
+                return !firma.hasRemaining() && Arrays.equals(firma.array(), FIRMA);
+            }
+        }
+
+        static ByteBuffer leerCabecera(FileChannel canal) throws IOException {
+            ByteBuffer cabecera = ByteBuffer.allocate(CABECERA).order(ByteOrder.LITTLE_ENDIAN);
+            while (cabecera.hasRemaining() && canal.read(cabecera, cabecera.position()) > 0) {
+                // leer hasta completar la cabecera o llegar al final
+            }
+            if (cabecera.hasRemaining() || !Arrays.equals(Arrays.copyOf(cabecera.array(), FIRMA.length), FIRMA)) {
+                throw new IOException("No es un archivo binario de calificaciones");
+            }
+            if (cabecera.get(4) != VERSION) {
+                throw new IOException("Versión de formato binario no soportada: " + cabecera.get(4));
+            }
+            return cabecera;
+        }
+
+        static long contarRegistros(String archivo, long inicio, long fin) throws IOException {
+            try (FileChannel canal = FileChannel.open(Paths.get(archivo), StandardOpenOption.READ)) {
+                int ancho = CodificacionBinaria.deCodigo(leerCabecera(canal).get(5)).ancho;
+                return Math.max(0, fin - Math.max(inicio, CABECERA)) / ancho;
+            }
+        }
+
+        // Reparte los registros en partes rangos de bytes alineados a registro
+        static long[] dividirEnRangos(String archivo, int partes) throws IOException {
+            try (FileChannel canal = FileChannel.open(Paths.get(archivo), StandardOpenOption.READ)) {
+                ByteBuffer cabecera = leerCabecera(canal);
+                int ancho = CodificacionBinaria.deCodigo(cabecera.get(5)).ancho;
+                long registros = cabecera.getLong(8);
+                long[] limites = new long[partes + 1];
+                for (int i = 0; i <= partes; i++) {
+                    limites[i] = CABECERA + registros * i / partes * ancho;
+                }
+                return limites;
+            }
+        }
+
+        @Override
+        public int leer(float[] destino) throws IOException {
+            int leidos = 0;
+            while (leidos < destino.length) {
+                if (!bloque.hasRemaining()) {
+                    if (posicion >= fin) {
+                        break;
+                    }
+                    // El bloque y el rango son múltiplos del ancho del registro
+                    bloque.clear().limit((int) Math.min(bloque.capacity(), fin - posicion));
+                    while (bloque.hasRemaining()) {
+                        int n = canal.read(bloque, posicion);
+                        if (n < 0) {
+                            throw new EOFException("Archivo binario truncado");
+                        }
+                        posicion += n;
+                    }
+                    bloque.flip();
+                }
+                int n = Math.min(destino.length - leidos, bloque.remaining() / codificacion.ancho);
+                if (codificacion == CodificacionBinaria.DECIMAS) {
+                    // Misma conversión que el lector de texto para "d.d"
+                    for (int k = 0; k < n; k++) {
+                        destino[leidos++] = (float) (bloque.getShort() / 10.0);
+                    }
+                } else {
+                    for (int k = 0; k < n; k++) {
+                        destino[leidos++] = bloque.getFloat();
+                    }
+                }
+            }
+            return leidos == 0 ? -1 : leidos;
+        }
+
+        @Override
+        public long posicion() {
+            return posicion - bloque.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+
+    // Convierte un archivo de calificaciones en texto al formato binario.
+    // Escribe la columna por bloques y completa el número de registros de la
+    // cabecera al final, así que la memoria no depende del tamaño del archivo.
+    static class ConversorCalificaciones {
+        static long convertir(String texto, String binario, CodificacionBinaria codificacion) throws IOException {
+            ByteBuffer bloque = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            float[] lote = new float[Productor.TAMANO_LOTE];
+            long registros = 0;
+            try (LectorCalificacionesMapeado lector = new LectorCalificacionesMapeado(texto);
+                 FileChannel salida = FileChannel.open(Paths.get(binario), StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                salida.position(LectorCalificacionesBinario.CABECERA);
+                int leidos;
+                while ((leidos = lector.leer(lote)) != -1) {
+                    for (int k = 0; k < leidos; k++) {
+                        if (bloque.remaining() < codificacion.ancho) {
+                            escribirBloque(salida, bloque);
+                        }
+                        float calificacion = lote[k];
+                        if (codificacion == CodificacionBinaria.DECIMAS) {
+                            long decimas = Math.round(calificacion * 10.0);
+                            if (decimas < Short.MIN_VALUE || decimas > Short.MAX_VALUE
+                                    || (float) (decimas / 10.0) != calificacion) {
+                                throw new IOException("La calificación #" + (registros + 1) + " (" + calificacion
+                                        + ") no se puede guardar en décimas; use la codificación flotante");
+                            }
+                            bloque.putShort((short) decimas);
+                        } else {
+                            bloque.putFloat(calificacion);
+                        }
+                        registros++;
+                    }
+                }
+                escribirBloque(salida, bloque);
+
+                ByteBuffer cabecera = ByteBuffer.allocate(LectorCalificacionesBinario.CABECERA)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                cabecera.put(LectorCalificacionesBinario.FIRMA).put(LectorCalificacionesBinario.VERSION)
+                        .put(codificacion.codigo).putShort((short) 0).putLong(registros).flip();
+                while (cabecera.hasRemaining()) {
+                    salida.write(cabecera, cabecera.position());
+                }
+            } catch (IOException e) {
+                // No dejar un archivo a medias que parezca válido
+                new File(binario).delete();
+                throw e;
+            } catch (NumberFormatException e) {
+                new File(binario).delete();
+                throw new IOException("Calificación inválida tras el registro " + registros + " de '" + texto
+                        + "': " + e.getMessage(), e);
+            }
+            return registros;
+        }
+
+        private static void escribirBloque(FileChannel salida, ByteBuffer bloque) throws IOException {
+            bloque.flip();
+            while (bloque.hasRemaining()) {
+                salida.write(bloque);
+            }
+            bloque.clear();
+        }
+    }
+
+    // Arranca las tareas del pipeline (productores, consumidores, escritura)
+    // en hilos de plataforma o en hilos virtuales. Los hilos virtuales existen
+    // desde Java 21; se obtienen por reflexión para que el programa siga
+    // compilando y ejecutándose en versiones anteriores, donde se usan hilos de
+    // plataforma.
+    static final class Hilos {
+        private static final Method DE_VIRTUAL;
+        private static final Method NOMBRAR;
+        private static final Method ARRANCAR;
+        private static volatile boolean virtuales = false;
+
+        static {
+            Method deVirtual = null;
+            Method nombrar = null;
+            Method arrancar = null;
+            try {
+                Class<?> constructor = Class.forName("java.lang.Thread$Builder");
+                deVirtual = Thread.class.getMethod("ofVirtual");
+                nombrar = constructor.getMethod("name", String.class);
+                arrancar = constructor.getMethod("start", Runnable.class);
+            } catch (ReflectiveOperationException e) {
+                // JVM sin hilos virtuales
+            }
+            DE_VIRTUAL = deVirtual;
+            NOMBRAR = nombrar;
+            ARRANCAR = arrancar;
+        }
+
+        static boolean virtualesDisponibles() {
+            return DE_VIRTUAL != null;
+        }
+
+        // Elige el tipo de hilo para lo que se arranque después; devuelve si
+        // quedaron activos los hilos virtuales
+        static boolean usarVirtuales(boolean pedidos) {
+            virtuales = pedidos && virtualesDisponibles();
+            return virtuales;
+        }
+
+        static boolean usandoVirtuales() {
+            return virtuales;
+        }
+
+        static Thread iniciar(String nombre, Runnable tarea) {
+            if (virtuales) {
+                try {
+                    Object constructor = NOMBRAR.invoke(DE_VIRTUAL.invoke(null), nombre);
+                    return (Thread) ARRANCAR.invoke(constructor, tarea);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("No se pudo crear un hilo virtual", e);
+                }
+            }
+            Thread hilo = new Thread(tarea, nombre);
+            hilo.start();
+            return hilo;
+        }
+    }
+
+    // Clase Productor que lee calificaciones del archivo
+    // Ahora es una clase estática anidada.
+    static class Productor implements Runnable {
+        // Calificaciones que se convierten por cada llamada al lector
+        static final int TAMANO_LOTE = 1024;
+
+        private ColaCalificaciones buffer;
+        private String archivoEntrada;
+        private String etiqueta;
+        private long inicio;
+        private long fin;
+        boolean traza = true; // una línea de consola por calificación
+        LatenciaSimulada latencia; // tiempo de producción simulado, o null
+        long nanosEntregando; // tiempo bloqueado entregando al buffer
+        volatile long enviadas; // avance publicado para las métricas
+        Seguimiento seguimiento; // null: leer el archivo una vez y terminar
+        PuntosControl puntosControl; // null: sin puntos de control
+        volatile Exception error; // por qué falló la lectura, o null
+        ConteoRangos conteo; // null: un solo productor, se numera por llegada
+        VentanaOrden ventana; // null: sin --orden=ordenado
+        int rango; // índice del rango en conteo
+        private long primera; // número de orden en el flujo del primer registro
+        private long proximoPunto;
+
+        // Modo seguimiento: cada cuánto revisar el archivo, tras cuánto tiempo
+        // sin datos nuevos terminar (0 = hasta que se pida parar) y qué hacer
+        // al terminar cada ronda con el total enviado hasta entonces. Se
+        // detiene con una bandera y no interrumpiendo el hilo, porque una
+        // interrupción a mitad de una operación cierra el FileChannel.
+        abstract static class Seguimiento {
+            long intervaloMs = 500;
+            long inactividadMs = 0;
+            volatile boolean detener;
+
+            abstract void terminada(long enviados) throws IOException, InterruptedException;
+        }
+
+        // Puntos de control: cada cuántas calificaciones tomar uno y cómo,
+        // con el total enviado y el byte de la entrada hasta el que llegó
+        abstract static class PuntosControl {
+            long cada = 1_000_000;
+
+            abstract void tomar(long enviados, long desplazamiento) throws IOException, InterruptedException;
+        }
+
+        public Productor(ColaCalificaciones buffer, String archivoEntrada) {
+            this(buffer, archivoEntrada, "PRODUCTOR", 0, -1);
+        }
+
+        // Productor que solo lee el rango de bytes [inicio, fin) del archivo
+        public Productor(ColaCalificaciones buffer, String archivoEntrada, String etiqueta, long inicio, long fin) {
+            this.buffer = buffer;
+            this.archivoEntrada = archivoEntrada;
+            this.etiqueta = etiqueta;
+            this.inicio = inicio;
+            this.fin = fin;
+        }
+
+        // Aunque la lectura falle se avisa el fin de la producción, para que
+        // los consumidores no esperen para siempre; quien lanzó al productor
+        // revisa error al terminar
+        @Override
+        public void run() {
+            boolean terminada = false;
+            try {
+                // Generar archivo de calificaciones si no existe (en modo por
+                // rangos ya lo generó quien dividió el archivo)
+                if (fin < 0) {
+                    generarArchivoCalificaciones(archivoEntrada);
+                }
+
+                float[] lote = new float[TAMANO_LOTE];
+                long contador;
+
+                if (traza) {
+                    System.out.println(etiqueta + ": Iniciando lectura de calificaciones...\n");
+                }
+
+                if (seguimiento != null) {
+                    contador = seguir(lote);
+                } else {
+                    if (conteo != null) {
+                        conteo.publicar(rango, FuenteCalificaciones.contarRegistros(archivoEntrada, inicio, fin));
+                        primera = conteo.base(rango);
+                    }
+                    // Leer calificaciones por lotes del archivo de texto mapeado en
+                    // memoria o del formato binario
+                    try (FuenteCalificaciones lector = FuenteCalificaciones.abrir(archivoEntrada, inicio, fin)) {
+                        if (puntosControl != null) {
+                            proximoPunto = puntosControl.cada;
+                        }
+                        contador = enviar(lector, lote, 0);
+                    }
+                }
+
+                buffer.terminarProduccion();
+                terminada = true;
+                if (traza) {
+                    System.out.println("\n" + etiqueta + ": Producción terminada. Total enviadas: " + contador);
+                }
+
+            } catch (CancellationException e) {
+                // Falló el lado consumidor y canceló el flujo; lo informa el pool
+                error = e;
+            } catch (Exception e) {
+                error = e;
+                // Su tramo no llegará: los demás productores no deben
+                // quedarse esperando en la ventana de orden
+                if (ventana != null) {
+                    ventana.cancelar();
+                }
+                System.err.println("Error en " + etiqueta + ": " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                if (conteo != null) {
+                    conteo.publicar(rango, -1); // sin efecto si ya se publicó
+                }
+                if (!terminada) {
+                    buffer.terminarProduccion();
+                }
+            }
+        }
+
+        // Envía al buffer todo lo que entregue el lector; devuelve el total
+        // enviado contando las contador calificaciones anteriores
+        private long enviar(FuenteCalificaciones lector, float[] lote, long contador)
+                throws IOException, InterruptedException {
+            int leidos;
+            while ((leidos = lector.leer(lote)) != -1) {
+                // Sin traza ni latencia simulada, el lote entra completo
+                if (!traza && latencia == null) {
+                    if (ventana != null) {
+                        ventana.esperar(primera + contador + leidos);
+                    }
+                    long inicioEntrega = System.nanoTime();
+                    buffer.producirLote(lote, leidos, primera + contador);
+                    nanosEntregando += System.nanoTime() - inicioEntrega;
+                    contador += leidos;
+                    enviadas = contador;
+                } else {
+                    contador = enviarUnoAUno(lote, leidos, contador);
+                }
+                // Los puntos de control caen entre lotes, donde el lector
+                // sabe exactamente hasta qué byte llegó
+                if (puntosControl != null && contador >= proximoPunto) {
+                    puntosControl.tomar(contador, lector.posicion());
+                    proximoPunto = contador + puntosControl.cada;
+                }
+            }
+            return contador;
+        }
+
+        // Con traza o latencia simulada, las calificaciones del lote se
+        // entregan de una en una
+        private long enviarUnoAUno(float[] lote, int leidos, long contador) throws InterruptedException {
+            for (int k = 0; k < leidos; k++) {
+                float calificacion = lote[k];
+                if (latencia != null) {
+                    latencia.esperar(); // Simular tiempo de producción
+                }
+                if (ventana != null) {
+                    ventana.esperar(primera + contador + 1);
+                }
+                long inicioEntrega = System.nanoTime();
+                buffer.producir(calificacion, primera + contador);
+                nanosEntregando += System.nanoTime() - inicioEntrega;
+                if (traza) {
+                    System.out.println(etiqueta + ": Enviando calificación #" + (primera + contador + 1) + " = " + calificacion);
+                }
+                contador++;
+                enviadas = contador;
+            }
+            return contador;
+        }
+
+        // Modo seguimiento: envía las líneas completas que ya tiene el archivo
+        // y después solo las que se le van agregando, a partir del último
+        // desplazamiento procesado; una línea a medio escribir queda para la
+        // siguiente ronda. Espera avisos del WatchService del directorio con el
+        // intervalo como límite, porque no todos los sistemas de archivos los
+        // generan. Termina cuando se pide parar o tras la inactividad
+        // configurada.
+        private long seguir(float[] lote) throws IOException {
+            if (LectorCalificacionesBinario.esBinario(archivoEntrada)) {
+                throw new IOException("El modo seguimiento solo admite archivos de texto");
+            }
+            Path ruta = Paths.get(archivoEntrada).toAbsolutePath();
+            long desplazamiento = 0;
+            long contador = 0;
+            long ultimaNovedad = System.nanoTime();
+            try (WatchService vigilante = ruta.getFileSystem().newWatchService()) {
+                ruta.getParent().register(vigilante, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                while (!seguimiento.detener) {
+                    long finCompleto = LectorCalificacionesMapeado.finDeLineasCompletas(archivoEntrada, desplazamiento);
+                    if (finCompleto < 0) {
+                        System.err.println(etiqueta + ": '" + archivoEntrada
+                                + "' se truncó; se continúa desde su nuevo inicio");
+                        desplazamiento = 0;
+                        continue;
+                    }
+                    if (finCompleto > desplazamiento) {
+                        try (FuenteCalificaciones lector =
+                                new LectorCalificacionesMapeado(archivoEntrada, desplazamiento, finCompleto)) {
+                            contador = enviar(lector, lote, contador);
+                        }
+                        desplazamiento = finCompleto;
+                        seguimiento.terminada(contador);
+                        ultimaNovedad = System.nanoTime();
+                    } else if (seguimiento.inactividadMs > 0
+                            && System.nanoTime() - ultimaNovedad >= seguimiento.inactividadMs * 1_000_000L) {
+                        break;
+                    }
+                    WatchKey clave = vigilante.poll(seguimiento.intervaloMs, TimeUnit.MILLISECONDS);
+                    if (clave != null) {
+                        clave.pollEvents();
+                        clave.reset();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Lo enviado hasta aquí entra en el resumen final
+                Thread.currentThread().interrupt();
+            }
+            return contador;
+        }
+
+        static void generarArchivoCalificaciones(String archivoEntrada) throws IOException {
+            File archivo = new File(archivoEntrada);
+            if (!archivo.exists()) {
+                PrintWriter writer = new PrintWriter(new FileWriter(archivo));
+                Random random = new Random();
+
+                System.out.println("Generando archivo de calificaciones...");
+
+                for (int i = 0; i < 20; i++) {
+                    float calificacion = 4.0f + random.nextFloat() * 6.0f;
+                    calificacion = Math.round(calificacion * 10) / 10.0f;
+                    writer.println(calificacion);
+                }
+
+                writer.close();
+                System.out.println("Archivo '" + archivoEntrada + "' generado con 20 calificaciones.\n");
+            }
+        }
+    }
+
+    // Buffer compartido por varios productores: cada uno llama a
+    // terminarProduccion() al acabar y solo el último la propaga al buffer real.
+    static class BufferCompartido implements ColaCalificaciones {
+        private final ColaCalificaciones destino;
+        private final AtomicInteger productoresActivos;
+
+        public BufferCompartido(ColaCalificaciones destino, int productores) {
+            this.destino = destino;
+            this.productoresActivos = new AtomicInteger(productores);
+        }
+
+        @Override
+        public void producir(float calificacion) throws InterruptedException {
+            destino.producir(calificacion);
+        }
+
+        @Override
+        public Float consumir() throws InterruptedException {
+            return destino.consumir();
+        }
+
+        @Override
+        public void producirLote(float[] origen, int n) throws InterruptedException {
+            destino.producirLote(origen, n);
+        }
+
+        @Override
+        public void producir(float calificacion, long posicion) throws InterruptedException {
+            destino.producir(calificacion, posicion);
+        }
+
+        @Override
+        public void producirLote(float[] origen, int n, long primera) throws InterruptedException {
+            destino.producirLote(origen, n, primera);
+        }
+
+        @Override
+        public int consumirLote(float[] destino, int max, long[] posicion) throws InterruptedException {
+            return this.destino.consumirLote(destino, max, posicion);
+        }
+
+        @Override
+        public long totalProducido() {
+            return destino.totalProducido();
+        }
+
+        @Override
+        public void registrarLatenciasEn(HistogramaLatencia histograma) {
+            destino.registrarLatenciasEn(histograma);
+        }
+
+        @Override
+        public void registrarMetricasEn(MetricasCola metricas) {
+            destino.registrarMetricasEn(metricas);
+        }
+
+        @Override
+        public int profundidad() {
+            return destino.profundidad();
+        }
+
+        @Override
+        public void terminarProduccion() {
+            if (productoresActivos.decrementAndGet() == 0) {
+                destino.terminarProduccion();
+            }
+        }
+
+        @Override
+        public void cancelar() {
+            destino.cancelar();
+        }
+    }
+
+    // Número de orden en el flujo del primer registro de cada rango de la
+    // entrada. Cada productor cuenta los registros de su rango, en paralelo con
+    // los demás, y espera solo a que estén contados los rangos anteriores.
+    static class ConteoRangos {
+        private final long[] registros;
+        private final CountDownLatch[] contados;
+
+        ConteoRangos(int rangos) {
+            registros = new long[rangos];
+            contados = new CountDownLatch[rangos];
+            for (int i = 0; i < rangos; i++) {
+                contados[i] = new CountDownLatch(1);
+            }
+        }
+
+        // registros = -1: el rango no se pudo contar
+        void publicar(int rango, long registros) {
+            if (contados[rango].getCount() > 0) {
+                this.registros[rango] = registros;
+                contados[rango].countDown();
+            }
+        }
+
+        long base(int rango) throws IOException, InterruptedException {
+            long base = 0;
+            for (int i = 0; i < rango; i++) {
+                contados[i].await();
+                if (registros[i] < 0) {
+                    throw new IOException("no se pudo contar el rango " + (i + 1) + " de la entrada");
+                }
+                base += registros[i];
+            }
+            return base;
+        }
+    }
+
+    // Ingesta en paralelo: el archivo se divide en rangos alineados a líneas y
+    // cada rango lo lee su propio Productor. Todos comparten un buffer MPMC y
+    // cada calificación lleva su número de orden en el archivo (base del rango
+    // según ConteoRangos más su desplazamiento dentro del rango), así que el
+    // número de "Alumno" sigue siendo el número de registro original sin que
+    // un productor tenga que esperar a que se consuma el rango anterior.
+    static class ProduccionParalela {
+        final Productor[] productores;
+        private final Thread[] hilos;
+        final ColaCalificaciones salida;
+        final HistogramaLatencia latenciaEntrega = new HistogramaLatencia();
+        final MetricasCola metricas = new MetricasCola();
+
+        public ProduccionParalela(Configuracion config) throws IOException {
+            this(config.entrada, config.productores, config.capacidad, config.consumidores);
+            for (Productor productor : productores) {
+                productor.traza = config.traza;
+                productor.latencia = config.latenciaProductor;
+            }
+        }
+
+        public ProduccionParalela(String archivo, int numProductores, int capacidad, int numConsumidores)
+                throws IOException {
+            Productor.generarArchivoCalificaciones(archivo);
+            long[] limites = FuenteCalificaciones.dividirEnRangos(archivo, numProductores);
+            productores = new Productor[numProductores];
+            hilos = new Thread[numProductores];
+
+            if (numProductores == 1) {
+                salida = nuevoBuffer(capacidad, 1, numConsumidores);
+                productores[0] = new Productor(salida, archivo, "PRODUCTOR", 0, limites[1]);
+            } else {
+                salida = new BufferCompartido(nuevoBuffer(capacidad, numProductores, numConsumidores),
+                        numProductores);
+                ConteoRangos conteo = new ConteoRangos(numProductores);
+                for (int i = 0; i < numProductores; i++) {
+                    productores[i] = new Productor(salida, archivo, "PRODUCTOR " + (i + 1),
+                            limites[i], limites[i + 1]);
+                    productores[i].conteo = conteo;
+                    productores[i].rango = i;
+                }
+            }
+            salida.registrarLatenciasEn(latenciaEntrega);
+            salida.registrarMetricasEn(metricas);
+        }
+
+        // El anillo SPSC basta cuando solo hay un hilo en cada extremo
+        static ColaCalificaciones nuevoBuffer(int capacidad, int productores, int consumidores) {
+            if (productores == 1 && consumidores == 1) {
+                return new BufferAnilloSPSC(capacidad);
+            }
+            return new BufferAnilloMPMC(capacidad);
+        }
+
+        public void iniciar() {
+            for (int i = 0; i < productores.length; i++) {
+                hilos[i] = Hilos.iniciar(productores[i].etiqueta, productores[i]);
+            }
+        }
+
+        public void esperar() throws InterruptedException {
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+        }
+
+        // Con --orden=ordenado los productores esperan en la ventana del pool
+        void ordenarCon(VentanaOrden ventana) {
+            for (Productor productor : productores) {
+                productor.ventana = ventana;
+            }
+        }
+
+        // Primer error de lectura de los productores, o null. Un productor
+        // cancelado por el fallo de otro no es la causa: se prefiere el otro.
+        Exception error() {
+            Exception cancelado = null;
+            for (Productor productor : productores) {
+                if (productor.error instanceof CancellationException) {
+                    if (cancelado == null) {
+                        cancelado = productor.error;
+                    }
+                } else if (productor.error != null) {
+                    return productor.error;
+                }
+            }
+            return cancelado;
+        }
+
+        // Calificaciones que los productores ya entregaron al buffer
+        long leidas() {
+            long total = 0;
+            for (Productor productor : productores) {
+                total += productor.enviadas;
+            }
+            return total;
+        }
+
+        void mostrarContrapresion() {
+            long entregando = 0;
+            for (Productor productor : productores) {
+                entregando += productor.nanosEntregando;
+            }
+            System.out.println("Lectura: " + milisegundos(entregando) + " esperando espacio en el buffer");
+            System.out.println("Buffer: " + metricas.esperaLleno.total() + " esperas por lleno (p99 "
+                    + microsegundos(metricas.esperaLleno.percentil(99)) + "), " + metricas.esperaVacio.total()
+                    + " esperas por vacío (p99 " + microsegundos(metricas.esperaVacio.percentil(99)) + ")");
+        }
+    }
+
+    // Estadísticas incrementales de un consumidor en memoria constante: conteos,
+    // media y varianza de aprobados (Welford), mínimo, máximo e histograma de
+    // 0.1 para percentiles aproximados. Cada hilo del pool tiene las suyas, así
+    // que en el camino caliente no se comparte nada mutable; al final se
+    // combinan todas en una.
+    static class AcumuladorCalificaciones {
+        // Histograma de 0.0 a 10.0 con resolución de 0.1
+        static final int CUBETAS = 101;
+
+        long procesados;
+        long aprobados;
+        double mediaAprobados;
+        double m2Aprobados; // suma de cuadrados de las desviaciones (Welford)
+        float minAprobado = Float.POSITIVE_INFINITY;
+        float maxAprobado = Float.NEGATIVE_INFINITY;
+        final long[] histograma = new long[CUBETAS];
+
+        void registrar(float calificacion) {
+            procesados++;
+            histograma[Math.max(0, Math.min(CUBETAS - 1, Math.round(calificacion * 10)))]++;
+            if (calificacion >= 6.0f) {
+                aprobados++;
+                double delta = calificacion - mediaAprobados;
+                mediaAprobados += delta / aprobados;
+                m2Aprobados += delta * (calificacion - mediaAprobados);
+                if (calificacion < minAprobado) {
+                    minAprobado = calificacion;
+                }
+                if (calificacion > maxAprobado) {
+                    maxAprobado = calificacion;
+                }
+            }
+        }
+
+        long reprobados() {
+            return procesados - aprobados;
+        }
+
+        double desviacionAprobados() {
+            return aprobados > 1 ? Math.sqrt(m2Aprobados / (aprobados - 1)) : 0.0;
+        }
+
+        // Percentil aproximado (0 a 100) de todas las calificaciones, con la
+        // resolución del histograma
+        float percentil(double p) {
+            long objetivo = (long) Math.ceil(p / 100.0 * procesados);
+            long acumulado = 0;
+            for (int i = 0; i < CUBETAS; i++) {
+                acumulado += histograma[i];
+                if (acumulado >= Math.max(objetivo, 1)) {
+                    return i / 10.0f;
+                }
+            }
+            return Float.NaN;
+        }
+
+        // Calificación en la posición k (desde 1) de menor a mayor, con la
+        // resolución del histograma
+        float enPosicion(long k) {
+            long acumulado = 0;
+            for (int i = 0; i < CUBETAS; i++) {
+                acumulado += histograma[i];
+                if (acumulado >= k) {
+                    return i / 10.0f;
+                }
+            }
+            return Float.NaN;
+        }
+
+        // Mediana de todas las calificaciones; con un número par, el promedio
+        // de las dos centrales
+        float mediana() {
+            if (procesados == 0) {
+                return Float.NaN;
+            }
+            if (procesados % 2 == 1) {
+                return enPosicion((procesados + 1) / 2);
+            }
+            long decimas = Math.round(enPosicion(procesados / 2) * 10) + Math.round(enPosicion(procesados / 2 + 1) * 10);
+            return decimas / 20.0f;
+        }
+
+        // Cuántas calificaciones son mayores que la dada
+        long mayoresQue(float calificacion) {
+            long mayores = 0;
+            for (int i = Math.max(0, Math.min(CUBETAS - 1, Math.round(calificacion * 10))) + 1; i < CUBETAS; i++) {
+                mayores += histograma[i];
+            }
+            return mayores;
+        }
+
+        // Combina otro acumulador en este (fórmula de Chan para la varianza)
+        void combinar(AcumuladorCalificaciones otro) {
+            if (aprobados == 0) {
+                // Copia exacta: la fórmula general puede perder el último bit
+                // de la media, y un acumulador restaurado de un punto de
+                // control debe seguir exactamente igual que el original
+                mediaAprobados = otro.mediaAprobados;
+                m2Aprobados = otro.m2Aprobados;
+                aprobados = otro.aprobados;
+            } else if (otro.aprobados > 0) {
+                long total = aprobados + otro.aprobados;
+                double delta = otro.mediaAprobados - mediaAprobados;
+                mediaAprobados += delta * otro.aprobados / total;
+                m2Aprobados += otro.m2Aprobados + delta * delta * aprobados * otro.aprobados / total;
+                aprobados = total;
+            }
+            procesados += otro.procesados;
+            minAprobado = Math.min(minAprobado, otro.minAprobado);
+            maxAprobado = Math.max(maxAprobado, otro.maxAprobado);
+            for (int i = 0; i < CUBETAS; i++) {
+                histograma[i] += otro.histograma[i];
+            }
+        }
+
+        // Estado completo, para los puntos de control
+        void escribir(DataOutput salida) throws IOException {
+            salida.writeLong(procesados);
+            salida.writeLong(aprobados);
+            salida.writeDouble(mediaAprobados);
+            salida.writeDouble(m2Aprobados);
+            salida.writeFloat(minAprobado);
+            salida.writeFloat(maxAprobado);
+            for (long cubeta : histograma) {
+                salida.writeLong(cubeta);
+            }
+        }
+
+        void leer(DataInput entrada) throws IOException {
+            procesados = entrada.readLong();
+            aprobados = entrada.readLong();
+            mediaAprobados = entrada.readDouble();
+            m2Aprobados = entrada.readDouble();
+            minAprobado = entrada.readFloat();
+            maxAprobado = entrada.readFloat();
+            for (int i = 0; i < CUBETAS; i++) {
+                histograma[i] = entrada.readLong();
+            }
+        }
+    }
+
+    // Las K calificaciones más altas (o más bajas) vistas, con su número de
+    // "Alumno", en un montículo binario sobre arreglos primitivos. La raíz es
+    // la que va última de las conservadas, así que una calificación que no
+    // entra se descarta con una sola comparación. A igual calificación va
+    // antes el número de alumno menor, para que el resultado no dependa de
+    // cómo se repartieron los lotes entre consumidores.
+    static final class MonticuloAcotado {
+        private final float[] valores;
+        private final long[] alumnos;
+        private final boolean altas; // true: conserva las más altas
+        private int tamano;
+
+        MonticuloAcotado(int k, boolean altas) {
+            this.valores = new float[k];
+            this.alumnos = new long[k];
+            this.altas = altas;
+        }
+
+        // true si (v1, a1) va antes que (v2, a2) en el ranking
+        private boolean antes(float v1, long a1, float v2, long a2) {
+            if (v1 != v2) {
+                return altas ? v1 > v2 : v1 < v2;
+            }
+            return a1 < a2;
+        }
+
+        void ofrecer(float valor, long alumno) {
+            if (tamano < valores.length) {
+                // Subir mientras el padre vaya antes que el nuevo
+                int i = tamano++;
+                while (i > 0) {
+                    int padre = (i - 1) / 2;
+                    if (!antes(valores[padre], alumnos[padre], valor, alumno)) {
+                        break;
+                    }
+                    valores[i] = valores[padre];
+                    alumnos[i] = alumnos[padre];
+                    i = padre;
+                }
+                valores[i] = valor;
+                alumnos[i] = alumno;
+                return;
+            }
+            if (tamano == 0 || !antes(valor, alumno, valores[0], alumnos[0])) {
+                return;
+            }
+            // Reemplazar la raíz y bajar mientras algún hijo vaya después
+            int i = 0;
+            while (true) {
+                int hijo = 2 * i + 1;
+                if (hijo >= tamano) {
+                    break;
+                }
+                if (hijo + 1 < tamano && antes(valores[hijo], alumnos[hijo], valores[hijo + 1], alumnos[hijo + 1])) {
+                    hijo++;
+                }
+                if (!antes(valor, alumno, valores[hijo], alumnos[hijo])) {
+                    break;
+                }
+                valores[i] = valores[hijo];
+                alumnos[i] = alumnos[hijo];
+                i = hijo;
+            }
+            valores[i] = valor;
+            alumnos[i] = alumno;
+        }
+
+        void combinar(MonticuloAcotado otro) {
+            for (int i = 0; i < otro.tamano; i++) {
+                ofrecer(otro.valores[i], otro.alumnos[i]);
+            }
+        }
+
+        int tamano() {
+            return tamano;
+        }
+
+        int capacidad() {
+            return valores.length;
+        }
+
+        void escribir(DataOutput salida) throws IOException {
+            salida.writeInt(valores.length);
+            salida.writeInt(tamano);
+            for (int i = 0; i < tamano; i++) {
+                salida.writeFloat(valores[i]);
+                salida.writeLong(alumnos[i]);
+            }
+        }
+
+        // El arreglo se guarda tal cual, así que sigue siendo un montículo
+        static MonticuloAcotado leer(DataInput entrada, boolean altas) throws IOException {
+            MonticuloAcotado monticulo = new MonticuloAcotado(entrada.readInt(), altas);
+            monticulo.tamano = entrada.readInt();
+            for (int i = 0; i < monticulo.tamano; i++) {
+                monticulo.valores[i] = entrada.readFloat();
+                monticulo.alumnos[i] = entrada.readLong();
+            }
+            return monticulo;
+        }
+
+        // Posiciones internas en orden de ranking (solo K elementos)
+        int[] enOrden() {
+            Integer[] orden = new Integer[tamano];
+            for (int i = 0; i < tamano; i++) {
+                orden[i] = i;
+            }
+            Arrays.sort(orden, (x, y) -> antes(valores[x], alumnos[x], valores[y], alumnos[y]) ? -1
+                    : antes(valores[y], alumnos[y], valores[x], alumnos[x]) ? 1 : 0);
+            int[] resultado = new int[tamano];
+            for (int i = 0; i < tamano; i++) {
+                resultado[i] = orden[i];
+            }
+            return resultado;
+        }
+
+        float valor(int posicion) {
+            return valores[posicion];
+        }
+
+        long alumno(int posicion) {
+            return alumnos[posicion];
+        }
+    }
+
+    // Modo ranking de un consumidor: las K mejores y las K peores
+    // calificaciones con su alumno. Junto con el histograma del acumulador
+    // (exacto para calificaciones de un decimal entre 0.0 y 10.0) da la
+    // mediana, los cuartiles y el puesto de cada alumno sin ordenar los datos.
+    static final class RankingCalificaciones {
+        final MonticuloAcotado mejores;
+        final MonticuloAcotado peores;
+
+        RankingCalificaciones(int k) {
+            this(new MonticuloAcotado(k, true), new MonticuloAcotado(k, false));
+        }
+
+        RankingCalificaciones(MonticuloAcotado mejores, MonticuloAcotado peores) {
+            this.mejores = mejores;
+            this.peores = peores;
+        }
+
+        void registrar(float calificacion, long alumno) {
+            mejores.ofrecer(calificacion, alumno);
+            peores.ofrecer(calificacion, alumno);
+        }
+
+        void combinar(RankingCalificaciones otro) {
+            mejores.combinar(otro.mejores);
+            peores.combinar(otro.peores);
+        }
+
+        // Sección del reporte; el puesto es 1 + cuántos tienen una
+        // calificación mayor, así que los empates comparten puesto
+        String texto(AcumuladorCalificaciones total) {
+            if (total.procesados == 0) {
+                return "";
+            }
+            String fin = System.lineSeparator();
+            StringBuilder texto = new StringBuilder();
+            texto.append("\n===== RANKING =====").append(fin);
+            texto.append("Mediana: ").append(total.mediana()).append(fin);
+            texto.append("Cuartiles: Q1 ").append(total.enPosicion((long) Math.ceil(total.procesados * 0.25)))
+                    .append(", Q3 ").append(total.enPosicion((long) Math.ceil(total.procesados * 0.75))).append(fin);
+            agregar(texto, "Mejores", mejores, total);
+            agregar(texto, "Peores", peores, total);
+            return texto.toString();
+        }
+
+        private static void agregar(StringBuilder texto, String titulo, MonticuloAcotado monticulo,
+                AcumuladorCalificaciones total) {
+            String fin = System.lineSeparator();
+            texto.append("\n").append(titulo).append(" ").append(monticulo.tamano()).append(":").append(fin);
+            int puesto = 0;
+            for (int i : monticulo.enOrden()) {
+                float calificacion = monticulo.valor(i);
+                texto.append("  ").append(++puesto).append(". Alumno ").append(monticulo.alumno(i)).append(": ")
+                        .append(calificacion).append(" (puesto ").append(total.mayoresQue(calificacion) + 1)
+                        .append(" de ").append(total.procesados).append(")").append(fin);
+            }
+        }
+    }
+
+    // Listado opcional de aprobados de un consumidor, volcado a un archivo
+    // temporal como pares (posición, calificación) para no retenerlo en memoria.
+    // Con un solo productor las posiciones de un mismo consumidor crecen y al
+    // final basta con mezclar los archivos de todos los consumidores; con
+    // varios, los lotes de cada rango llegan intercalados y se anota que el
+    // archivo quedó desordenado.
+    static class ListadoAprobados implements Closeable {
+        private final File archivo;
+        private final DataOutputStream salida;
+        boolean ordenado = true; // posiciones crecientes
+        long mayor = -1; // mayor posición anotada
+
+        public ListadoAprobados() throws IOException {
+            this.archivo = File.createTempFile("aprobados", ".bin");
+            this.archivo.deleteOnExit();
+            this.salida = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(archivo), 1 << 16));
+        }
+
+        void agregar(long posicion, float calificacion) throws IOException {
+            if (posicion < mayor) {
+                ordenado = false;
+            }
+            mayor = Math.max(mayor, posicion);
+            salida.writeLong(posicion);
+            salida.writeFloat(calificacion);
+        }
+
+        DataInputStream abrir() throws IOException {
+            return new DataInputStream(new BufferedInputStream(new FileInputStream(archivo), 1 << 16));
+        }
+
+        @Override
+        public void close() throws IOException {
+            salida.close();
+        }
+
+        void borrar() {
+            archivo.delete();
+        }
+    }
+
+    // Cuándo se pasan al archivo los bloques acumulados del reporte
+    enum PoliticaVaciado {
+        POR_TAMANO, // al llenarse el bloque
+        POR_TIEMPO, // al llenarse el bloque o al pasar el intervalo desde la última escritura
+        AL_FINAL // solo al cerrar; el bloque crece lo necesario (reportes pequeños)
+    }
+
+    // Escritor del reporte por bloques: el texto se acumula en un StringBuilder
+    // reutilizable, se codifica en un ByteBuffer también reutilizable y se
+    // escribe con un FileChannel en bloques grandes, en lugar de una escritura
+    // y un flush por línea. Usa el juego de caracteres por defecto y
+    // System.lineSeparator(), igual que PrintWriter, así que el archivo queda
+    // idéntico.
+    static class EscritorReporte implements Closeable {
+        private final String archivo;
+        private final FileChannel canal;
+        private final PoliticaVaciado politica;
+        private final int tamanoBloque;
+        private final long intervaloNanos;
+        private final StringBuilder pendiente;
+        // Igual que PrintWriter: lo que el juego de caracteres no admite se
+        // reemplaza en lugar de fallar
+        private final CharsetEncoder codificador = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes;
+        private long ultimoVaciado = System.nanoTime();
+        // Con un ReentrantLock y no synchronized, un hilo virtual que espera
+        // al disco dentro del cerrojo no queda fijado a su hilo portador
+        private final ReentrantLock cerrojo = new ReentrantLock();
+
+        public EscritorReporte(String archivo, PoliticaVaciado politica, int tamanoBloque, long intervaloMs)
+                throws IOException {
+            this(archivo, 0, politica, tamanoBloque, intervaloMs);
+        }
+
+        // Conserva los primeros bytes del archivo y escribe a continuación;
+        // sirve para reanudar desde un punto de control
+        public EscritorReporte(String archivo, long conservar, PoliticaVaciado politica, int tamanoBloque,
+                long intervaloMs) throws IOException {
+            this.archivo = archivo;
+            if (conservar == 0) {
+                this.canal = FileChannel.open(Paths.get(archivo), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            } else {
+                this.canal = FileChannel.open(Paths.get(archivo), StandardOpenOption.WRITE);
+                canal.truncate(conservar);
+                canal.position(conservar);
+            }
+            this.politica = politica;
+            this.tamanoBloque = tamanoBloque;
+            this.intervaloNanos = intervaloMs * 1_000_000L;
+            this.pendiente = new StringBuilder(tamanoBloque);
+            this.bytes = ByteBuffer.allocateDirect(tamanoBloque);
+        }
+
+        String archivo() {
+            return archivo;
+        }
+
+        public void escribir(CharSequence texto) throws IOException {
+            cerrojo.lock();
+            try {
+                pendiente.append(texto);
+                if (politica != PoliticaVaciado.AL_FINAL && pendiente.length() >= tamanoBloque) {
+                    vaciar();
+                } else if (politica == PoliticaVaciado.POR_TIEMPO && pendiente.length() > 0
+                        && System.nanoTime() - ultimoVaciado >= intervaloNanos) {
+                    vaciar();
+                }
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        public void escribirLinea(String linea) throws IOException {
+            escribir(linea + System.lineSeparator());
+        }
+
+        // Con POR_TIEMPO, vacía lo pendiente si ya pasó el intervalo aunque no
+        // haya llegado texto nuevo
+        public void vaciarSiVencido() throws IOException {
+            cerrojo.lock();
+            try {
+                if (politica == PoliticaVaciado.POR_TIEMPO && pendiente.length() > 0
+                        && System.nanoTime() - ultimoVaciado >= intervaloNanos) {
+                    vaciar();
+                }
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        // Codifica todo lo pendiente y lo pasa al canal, reutilizando el buffer
+        public void vaciar() throws IOException {
+            cerrojo.lock();
+            try {
+                CharBuffer caracteres = CharBuffer.wrap(pendiente);
+                codificador.reset();
+                while (true) {
+                    CoderResult resultado = codificador.encode(caracteres, bytes, true);
+                    if (resultado.isUnderflow()) {
+                        resultado = codificador.flush(bytes);
+                    }
+                    if (resultado.isError()) {
+                        resultado.throwException();
+                    }
+                    escribirBytes();
+                    if (resultado.isUnderflow()) {
+                        break;
+                    }
+                }
+                pendiente.setLength(0);
+                ultimoVaciado = System.nanoTime();
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        private void escribirBytes() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                canal.write(bytes);
+            }
+            bytes.clear();
+        }
+
+        // Vacía lo pendiente, lo fuerza al disco y devuelve la longitud del
+        // archivo; para los puntos de control
+        public long asegurar() throws IOException {
+            cerrojo.lock();
+            try {
+                vaciar();
+                canal.force(false);
+                return canal.position();
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        // Escribe el texto al final del archivo sin avanzar la posición de
+        // escritura: lo siguiente que se escriba empieza encima de él. Sirve
+        // para el resumen en curso del modo seguimiento.
+        public void escribirProvisional(CharSequence texto) throws IOException {
+            cerrojo.lock();
+            try {
+                vaciar();
+                long posicion = canal.position();
+                pendiente.append(texto);
+                vaciar();
+                canal.truncate(canal.position());
+                canal.position(posicion);
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        // Cerrarlo otra vez no hace nada
+        @Override
+        public void close() throws IOException {
+            cerrojo.lock();
+            try {
+                if (!canal.isOpen()) {
+                    return;
+                }
+                vaciar();
+                // Descarta lo que quede de un texto provisional más largo
+                canal.truncate(canal.position());
+                canal.close();
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+    }
+
+    // Ventana de --orden=ordenado: la etapa de escritura publica hasta qué
+    // número de orden ya escribió el detalle, y los productores no envían
+    // registros a más de REGISTROS de distancia. Así los bloques que la etapa
+    // retiene esperando al que falta nunca cubren más de REGISTROS registros,
+    // por lentos que sean un consumidor o un rango.
+    static class VentanaOrden {
+        static final int REGISTROS = 64 * 1024;
+
+        volatile long escritos; // registros del flujo ya escritos en orden
+        private volatile boolean cancelada;
+
+        // Espera a que los registros anteriores a fin quepan en la ventana
+        void esperar(long fin) throws InterruptedException {
+            int intento = 0;
+            while (fin > escritos + REGISTROS) {
+                if (cancelada) {
+                    throw flujoCancelado();
+                }
+                esperarTurno(intento++);
+            }
+        }
+
+        // El flujo falló y el registro que falta puede no llegar nunca
+        void cancelar() {
+            cancelada = true;
+        }
+    }
+
+    // Etapa de escritura diferida: un hilo propio pasa al EscritorReporte los
+    // bloques de detalle que llenan los consumidores, para que la latencia del
+    // disco no detenga la clasificación. Los bloques son StringBuilder
+    // reutilizables que circulan entre dos colas: libres (los pide el
+    // consumidor) y llenos (los toma el escritor).
+    //  - Sin ventana (--orden=libre), los bloques se escriben en el orden en
+    //    que llegan: con varios consumidores (o productores) el detalle queda
+    //    en orden de terminación de los lotes, aunque cada línea conserva su
+    //    número de alumno. Si el disco se atrasa, los consumidores solo
+    //    esperan cuando ya no queda ningún bloque libre.
+    //  - Con ventana (--orden=ordenado), cada lote entrega un bloque, aunque
+    //    no tenga aprobados, con la posición de su primer registro. Los que
+    //    llegan antes de tiempo esperan en pendientes hasta que se escribe el
+    //    anterior, así que el detalle queda en orden de archivo. Un consumidor
+    //    nunca espera un bloque libre (crea uno si hace falta): el que retiene
+    //    el siguiente lote podría estar esperándolo. El límite lo pone la
+    //    VentanaOrden, que detiene a los productores.
+    static class EtapaEscritura implements Runnable {
+        private static final Bloque FIN = new Bloque(0);
+        private static final Bloque SINCRONIZAR = new Bloque(0);
+
+        // Detalle de un lote y, con ventana, qué tramo del flujo cubre
+        static final class Bloque {
+            final StringBuilder texto;
+            long posicion; // número de orden del primer registro del lote
+            int registros;
+
+            Bloque(int tamano) {
+                texto = new StringBuilder(tamano);
+            }
+        }
+
+        private final EscritorReporte escritor;
+        private final BlockingQueue<Bloque> libres;
+        private final BlockingQueue<Bloque> llenos;
+        private final Semaphore sincronizado = new Semaphore(0);
+        private volatile IOException error;
+        // Flujo de entrada que se cancela si falla la escritura, o null
+        ColaCalificaciones entrada;
+        final VentanaOrden ventana; // null: los bloques se escriben según llegan
+        // Solo los usa el hilo escritor
+        private final Map<Long, Bloque> pendientes = new HashMap<>();
+        private long siguiente; // posición del próximo bloque a escribir
+
+        // Contrapresión: esperas de los consumidores por un bloque libre y
+        // tiempo del escritor ocioso frente a tiempo escribiendo
+        final AtomicLong esperasConsumidores = new AtomicLong();
+        final AtomicLong nanosEsperaConsumidores = new AtomicLong();
+        volatile long nanosOcioso;
+        volatile long nanosEscribiendo;
+        volatile long bloquesEscritos;
+
+        public EtapaEscritura(EscritorReporte escritor, int bloques, int tamanoBloque, VentanaOrden ventana) {
+            this.escritor = escritor;
+            this.ventana = ventana;
+            this.libres = new ArrayBlockingQueue<>(bloques);
+            // Con ventana puede haber más bloques que los iniciales en
+            // circulación; cuántos lo acota la ventana
+            this.llenos = ventana == null ? new ArrayBlockingQueue<>(bloques + 2) : new LinkedBlockingQueue<>();
+            for (int i = 0; i < bloques; i++) {
+                libres.add(new Bloque(tamanoBloque));
+            }
+        }
+
+        // Entrega un bloque vacío al consumidor. Sin ventana bloquea si todos
+        // están en uso; con ventana crea uno pequeño que crece según haga falta
+        Bloque obtenerBloque() throws InterruptedException {
+            Bloque bloque = libres.poll();
+            if (bloque == null) {
+                if (ventana != null) {
+                    return new Bloque(64);
+                }
+                long inicio = System.nanoTime();
+                bloque = libres.take();
+                esperasConsumidores.incrementAndGet();
+                nanosEsperaConsumidores.addAndGet(System.nanoTime() - inicio);
+            }
+            return bloque;
+        }
+
+        // Nunca bloquea: la cola de llenos tiene sitio para todos los bloques
+        void entregar(Bloque bloque) throws InterruptedException {
+            llenos.put(bloque);
+        }
+
+        // Se llama cuando ya no habrá más bloques; el hilo termina al escribir
+        // todo lo pendiente
+        void terminar() throws InterruptedException {
+            llenos.put(FIN);
+        }
+
+        // Espera a que todo lo entregado hasta ahora esté escrito en el archivo.
+        // Con ventana, lo entregado es un prefijo del flujo (el productor está
+        // detenido), así que no queda nada en pendientes.
+        void sincronizar() throws InterruptedException {
+            llenos.put(SINCRONIZAR);
+            sincronizado.acquire();
+        }
+
+        IOException error() {
+            return error;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    long inicio = System.nanoTime();
+                    Bloque bloque = llenos.poll(50, TimeUnit.MILLISECONDS);
+                    long tomado = System.nanoTime();
+                    nanosOcioso += tomado - inicio;
+                    if (bloque == FIN) {
+                        // Si quedan pendientes es que falló un productor y su
+                        // tramo no llegará; la corrida ya se da por fallida
+                        break;
+                    }
+                    if (bloque == SINCRONIZAR) {
+                        if (error == null) {
+                            try {
+                                escritor.vaciar();
+                            } catch (IOException e) {
+                                fallar(e);
+                            }
+                        }
+                        sincronizado.release();
+                        continue;
+                    }
+                    if (bloque == null) {
+                        if (error == null) {
+                            try {
+                                escritor.vaciarSiVencido();
+                            } catch (IOException e) {
+                                fallar(e);
+                            }
+                        }
+                        continue;
+                    }
+                    if (ventana == null) {
+                        escribir(bloque);
+                    } else if (bloque.posicion != siguiente) {
+                        pendientes.put(bloque.posicion, bloque);
+                    } else {
+                        // Este bloque y los que ya esperaban detrás de él
+                        while (bloque != null) {
+                            siguiente += bloque.registros;
+                            escribir(bloque);
+                            bloque = pendientes.remove(siguiente);
+                        }
+                        ventana.escritos = siguiente;
+                    }
+                    nanosEscribiendo += System.nanoTime() - tomado;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Escribe el bloque y lo devuelve a libres; los creados de más se
+        // descartan cuando libres ya está llena
+        private void escribir(Bloque bloque) {
+            if (error == null && bloque.texto.length() > 0) {
+                try {
+                    escritor.escribir(bloque.texto);
+                } catch (IOException e) {
+                    // Seguir reciclando bloques para no bloquear a los consumidores
+                    fallar(e);
+                }
+            }
+            bloque.texto.setLength(0);
+            libres.offer(bloque);
+            bloquesEscritos++;
+        }
+
+        // Cancela la entrada y la ventana: productores y consumidores dejan
+        // de trabajar en un reporte que ya no se completará
+        void cancelar() {
+            if (entrada != null) {
+                entrada.cancelar();
+            }
+            if (ventana != null) {
+                ventana.cancelar();
+            }
+        }
+
+        private void fallar(IOException e) {
+            error = e;
+            cancelar();
+        }
+    }
+
+    // Consumidor del pool: clasifica sus lotes sobre su propio acumulador y
+    // entrega las líneas de detalle de los aprobados del lote completo de una
+    // vez.
+    static class Consumidor implements Runnable {
+        // Máximo de calificaciones que se retiran del buffer por entrega
+        static final int TAMANO_LOTE = 64;
+
+        private ColaCalificaciones buffer;
+        private EtapaEscritura escritura;
+        private String etiqueta;
+        final AcumuladorCalificaciones acumulador = new AcumuladorCalificaciones();
+        final ListadoAprobados listado; // null si no se pidió el listado
+        RankingCalificaciones ranking; // null si no se pidió el ranking
+        long base; // calificaciones anteriores a este flujo (al reanudar)
+        boolean traza = true; // una línea de consola por calificación
+        LatenciaSimulada latencia; // tiempo de procesamiento simulado, o null
+        long nanosEsperandoEntrada; // tiempo bloqueado en el buffer de entrada
+        // Calificaciones ya clasificadas y entregadas a la etapa de escritura;
+        // al leerlo, el acumulador refleja al menos ese avance
+        volatile long publicados;
+        volatile Exception error; // por qué falló el consumidor, o null
+
+        // Línea de detalle del reporte para una calificación aprobatoria
+        static void agregarDetalle(StringBuilder detalle, long numero, float calificacion) {
+            detalle.append("Alumno ").append(numero).append(": ").append(calificacion)
+                    .append(" - APROBADO").append(System.lineSeparator());
+        }
+
+        public Consumidor(ColaCalificaciones buffer, EtapaEscritura escritura, String etiqueta,
+                ListadoAprobados listado) {
+            this.buffer = buffer;
+            this.escritura = escritura;
+            this.etiqueta = etiqueta;
+            this.listado = listado;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (traza) {
+                    System.out.println("\n" + etiqueta + ": Iniciando procesamiento...\n");
+                }
+
+                float[] lote = new float[TAMANO_LOTE];
+                long[] posicion = new long[1];
+                EtapaEscritura.Bloque detalle = null; // bloque de la etapa de escritura
+                boolean ordenado = escritura.ventana != null;
+                int tomados;
+
+                // Bucle principal del consumidor: cada entrega trae un lote
+                // completo que se clasifica en una sola pasada
+                while (true) {
+                    long inicioEspera = System.nanoTime();
+                    tomados = buffer.consumirLote(lote, lote.length, posicion);
+                    nanosEsperandoEntrada += System.nanoTime() - inicioEspera;
+                    if (tomados == -1) {
+                        break;
+                    }
+                    for (int k = 0; k < tomados; k++) {
+                        float calificacion = lote[k];
+                        long numero = base + posicion[0] + k + 1;
+                        acumulador.registrar(calificacion);
+                        if (ranking != null) {
+                            ranking.registrar(calificacion, numero);
+                        }
+                        if (traza) {
+                            System.out.print(etiqueta + ": Procesando calificación #" + numero + " = " + calificacion);
+                        }
+
+                        if (calificacion >= 6.0f) {
+                            if (listado != null) {
+                                listado.agregar(numero - 1, calificacion);
+                            }
+                            if (detalle == null) {
+                                detalle = escritura.obtenerBloque();
+                            }
+                            agregarDetalle(detalle.texto, numero, calificacion);
+                            if (traza) {
+                                System.out.println(" -> ✓ APROBADO");
+                            }
+                        } else if (traza) {
+                            System.out.println(" -> ✗ Reprobado");
+                        }
+                        if (latencia != null) {
+                            latencia.esperar(); // Simular tiempo de procesamiento
+                        }
+                    }
+                    // El lote completo pasa a la etapa de escritura de una vez.
+                    // En orden hace falta un bloque aunque no haya aprobados,
+                    // para que la etapa sepa que el tramo ya se clasificó.
+                    if (ordenado && detalle == null) {
+                        detalle = escritura.obtenerBloque();
+                    }
+                    if (detalle != null) {
+                        detalle.posicion = posicion[0];
+                        detalle.registros = tomados;
+                        escritura.entregar(detalle);
+                        detalle = null;
+                    }
+                    publicados = publicados + tomados;
+                }
+                if (listado != null) {
+                    listado.close();
+                }
+
+            } catch (Exception e) {
+                // Sin este consumidor su parte del flujo quedaría sin retirar:
+                // se cancela para que los productores y los demás consumidores
+                // terminen, y el pool lanza el error al esperar
+                error = e;
+                buffer.cancelar();
+                escritura.cancelar();
+                System.err.println("Error en " + etiqueta + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Punto de control de una corrida larga: hasta qué byte de la entrada se
+    // procesó, cuántas calificaciones eran, cuántos bytes del reporte las
+    // contienen y el estado de los acumuladores en ese momento. Al reanudar,
+    // el reporte se corta a esa longitud y la lectura sigue desde ese byte, así
+    // que el resultado es el mismo que el de una corrida sin interrupciones.
+    // Se escribe en un archivo temporal que después reemplaza al anterior de
+    // una sola vez, para que una caída a mitad de la escritura deje el punto
+    // anterior intacto.
+    static class PuntoControl {
+        static final int FIRMA = 0x43414C50; // "CALP"
+        static final int VERSION = 1;
+
+        final String archivo;
+        String entrada;
+        String salida;
+        long desplazamiento; // byte de la entrada hasta el que se procesó
+        long registros; // calificaciones procesadas hasta ese byte
+        long longitudReporte; // bytes del reporte que corresponden a ellas
+        AcumuladorCalificaciones acumulador = new AcumuladorCalificaciones();
+        RankingCalificaciones ranking; // null si no se pidió el ranking
+
+        PuntoControl(String archivo) {
+            this.archivo = archivo;
+        }
+
+        void guardar() throws IOException {
+            File temporal = new File(archivo + ".tmp");
+            try (FileOutputStream archivoSalida = new FileOutputStream(temporal)) {
+                DataOutputStream salidaDatos = new DataOutputStream(new BufferedOutputStream(archivoSalida));
+                salidaDatos.writeInt(FIRMA);
+                salidaDatos.writeInt(VERSION);
+                salidaDatos.writeUTF(entrada);
+                salidaDatos.writeUTF(salida);
+                salidaDatos.writeLong(desplazamiento);
+                salidaDatos.writeLong(registros);
+                salidaDatos.writeLong(longitudReporte);
+                acumulador.escribir(salidaDatos);
+                salidaDatos.writeBoolean(ranking != null);
+                if (ranking != null) {
+                    ranking.mejores.escribir(salidaDatos);
+                    ranking.peores.escribir(salidaDatos);
+                }
+                salidaDatos.flush();
+                archivoSalida.getFD().sync();
+            }
+            Files.move(temporal.toPath(), Paths.get(archivo), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        // El punto guardado en archivo, o null si no hay ninguno
+        static PuntoControl cargar(String archivo) throws IOException {
+            if (!new File(archivo).isFile()) {
+                return null;
+            }
+            PuntoControl punto = new PuntoControl(archivo);
+            try (DataInputStream entradaDatos = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(archivo)))) {
+                if (entradaDatos.readInt() != FIRMA || entradaDatos.readInt() != VERSION) {
+                    throw new IOException("'" + archivo + "' no es un punto de control válido");
+                }
+                punto.entrada = entradaDatos.readUTF();
+                punto.salida = entradaDatos.readUTF();
+                punto.desplazamiento = entradaDatos.readLong();
+                punto.registros = entradaDatos.readLong();
+                punto.longitudReporte = entradaDatos.readLong();
+                punto.acumulador.leer(entradaDatos);
+                if (entradaDatos.readBoolean()) {
+                    MonticuloAcotado mejores = MonticuloAcotado.leer(entradaDatos, true);
+                    MonticuloAcotado peores = MonticuloAcotado.leer(entradaDatos, false);
+                    punto.ranking = new RankingCalificaciones(mejores, peores);
+                }
+            }
+            return punto;
+        }
+
+        // Comprueba que el punto corresponde a esta corrida y que la entrada y
+        // el reporte siguen teniendo lo que registró
+        void validar(Configuracion config) throws IOException {
+            if (!entrada.equals(config.entrada) || !salida.equals(config.salida)) {
+                throw new IOException("El punto de control '" + archivo + "' es de otra corrida ('" + entrada
+                        + "' -> '" + salida + "')");
+            }
+            if (new File(entrada).length() < desplazamiento || new File(salida).length() < longitudReporte) {
+                throw new IOException("La entrada o el reporte son más cortos que en el punto de control '"
+                        + archivo + "'");
+            }
+            if ((ranking != null) != (config.ranking > 0)
+                    || (ranking != null && ranking.mejores.capacidad() != config.ranking)) {
+                throw new IOException("El punto de control '" + archivo + "' se tomó con otro --ranking");
+            }
+        }
+
+        void borrar() {
+            new File(archivo).delete();
+        }
+    }
+
+    // Pool de K consumidores sobre el mismo buffer. Al terminar todos, combina
+    // sus acumuladores y escribe el resumen final. Con K > 1 cada lote conserva
+    // su número de "Alumno", pero los bloques de detalle de consumidores
+    // distintos pueden quedar intercalados en el archivo, salvo con una
+    // VentanaOrden (--orden=ordenado).
+    // El listado numerado de aprobados del resumen es opcional (listarAprobados):
+    // sin él, la memoria usada no depende del tamaño de la entrada.
+    static class PoolConsumidores {
+        // Bloques de detalle en circulación entre consumidores y escritor
+        static final int BLOQUES_ESCRITURA = 16;
+        static final String ENCABEZADO = "=== CALIFICACIONES APROBATORIAS ===\n";
+
+        private final Consumidor[] consumidores;
+        private final Thread[] hilos;
+        private final EscritorReporte escritor;
+        private final EtapaEscritura escritura;
+        private Thread hiloEscritura;
+        private final boolean listarAprobados;
+        boolean resumenEnConsola = true;
+        private boolean reanudado;
+        AcumuladorCalificaciones total; // disponible al terminar esperar()
+        RankingCalificaciones ranking; // idem, solo si se pidió
+
+        public PoolConsumidores(ColaCalificaciones buffer, EscritorReporte escritor, int numConsumidores,
+                boolean listarAprobados) throws IOException {
+            this(buffer, escritor, numConsumidores, listarAprobados, null);
+        }
+
+        // Con ventana el detalle se escribe en orden de archivo; los
+        // productores deben esperar en ella (ProduccionParalela.ordenarCon)
+        public PoolConsumidores(ColaCalificaciones buffer, EscritorReporte escritor, int numConsumidores,
+                boolean listarAprobados, VentanaOrden ventana) throws IOException {
+            this.listarAprobados = listarAprobados;
+            this.escritor = escritor;
+            this.escritura = new EtapaEscritura(escritor, Math.max(BLOQUES_ESCRITURA, 2 * numConsumidores),
+                    Consumidor.TAMANO_LOTE * 32, ventana);
+            escritura.entrada = buffer;
+            this.consumidores = new Consumidor[numConsumidores];
+            this.hilos = new Thread[numConsumidores];
+            for (int i = 0; i < numConsumidores; i++) {
+                String etiqueta = numConsumidores == 1 ? "CONSUMIDOR" : "CONSUMIDOR " + (i + 1);
+                consumidores[i] = new Consumidor(buffer, escritura, etiqueta,
+                        listarAprobados ? new ListadoAprobados() : null);
+            }
+        }
+
+        public PoolConsumidores(ColaCalificaciones buffer, EscritorReporte escritor, Configuracion config)
+                throws IOException {
+            this(buffer, escritor, config.consumidores, config.listarAprobados,
+                    config.ordenado ? new VentanaOrden() : null);
+            for (Consumidor consumidor : consumidores) {
+                consumidor.traza = config.traza;
+                consumidor.latencia = config.latenciaConsumidor;
+                if (config.ranking > 0) {
+                    consumidor.ranking = new RankingCalificaciones(config.ranking);
+                }
+            }
+        }
+
+        // Ventana en la que deben esperar los productores, o null en orden libre
+        VentanaOrden ventana() {
+            return escritura.ventana;
+        }
+
+        // Combina los rankings de todos los consumidores, o null sin ranking
+        private RankingCalificaciones rankingCombinado() {
+            if (consumidores[0].ranking == null) {
+                return null;
+            }
+            RankingCalificaciones combinado = new RankingCalificaciones(consumidores[0].ranking.mejores.capacidad());
+            for (Consumidor consumidor : consumidores) {
+                combinado.combinar(consumidor.ranking);
+            }
+            return combinado;
+        }
+
+        // Parte del estado de un punto de control: el primer consumidor recibe
+        // los acumuladores, todos numeran a partir de sus registros y el
+        // encabezado ya está en el reporte
+        void reanudar(PuntoControl punto) {
+            consumidores[0].acumulador.combinar(punto.acumulador);
+            if (punto.ranking != null) {
+                consumidores[0].ranking.combinar(punto.ranking);
+            }
+            for (Consumidor consumidor : consumidores) {
+                consumidor.base = punto.registros;
+            }
+            reanudado = true;
+        }
+
+        public void iniciar() throws IOException {
+            if (!reanudado) {
+                escritor.escribirLinea(ENCABEZADO);
+            }
+            hiloEscritura = Hilos.iniciar("ESCRITOR", escritura);
+            for (int i = 0; i < consumidores.length; i++) {
+                hilos[i] = Hilos.iniciar(consumidores[i].etiqueta, consumidores[i]);
+            }
+        }
+
+        // Si falló un consumidor o la escritura lanza el error sin escribir
+        // el resumen: el reporte queda incompleto
+        public void esperar() throws IOException, InterruptedException {
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+            // El resumen va después de todo el detalle: esperar a que la etapa
+            // de escritura vacíe su cola
+            escritura.terminar();
+            hiloEscritura.join();
+            IOException fallo = fallo();
+            if (fallo != null) {
+                cerrarTrasFallo(fallo);
+            }
+
+            total = new AcumuladorCalificaciones();
+            for (Consumidor consumidor : consumidores) {
+                total.combinar(consumidor.acumulador);
+            }
+            ranking = rankingCombinado();
+            try {
+                escribirResumen(total);
+            } catch (IOException e) {
+                cerrarTrasFallo(new IOException("no se pudo escribir el resumen: " + e.getMessage(), e));
+            }
+            if (resumenEnConsola) {
+                mostrarResumen(total);
+            }
+        }
+
+        // Cierra el reporte incompleto y lanza el fallo
+        private void cerrarTrasFallo(IOException fallo) throws IOException {
+            try {
+                escritor.close();
+            } catch (IOException e) {
+                fallo.addSuppressed(e);
+            }
+            throw fallo;
+        }
+
+        private void escribirResumen(AcumuladorCalificaciones total) throws IOException {
+            // Escribir resumen final
+            escritor.escribir(conteos(total, "RESUMEN FINAL"));
+            if (listarAprobados) {
+                escritor.escribirLinea("\nCalificaciones aprobatorias:");
+                escribirListadoAprobados();
+            }
+            escritor.escribir(estadisticas(total));
+            if (ranking != null) {
+                escritor.escribir(ranking.texto(total));
+            }
+
+            escritor.close();
+        }
+
+        static String conteos(AcumuladorCalificaciones total, String titulo) {
+            String fin = System.lineSeparator();
+            return "\n\n===== " + titulo + " =====" + fin
+                    + "Total de alumnos procesados: " + total.procesados + fin
+                    + "Total de aprobados: " + total.aprobados + fin
+                    + "Total de reprobados: " + total.reprobados() + fin;
+        }
+
+        static String estadisticas(AcumuladorCalificaciones total) {
+            // Calcular estadísticas
+            if (total.aprobados == 0) {
+                return "";
+            }
+            String fin = System.lineSeparator();
+            float promedio = (float) total.mediaAprobados;
+            return "\n===== ESTADÍSTICAS DE APROBADOS =====" + fin
+                    + "Promedio: " + String.format("%.2f", promedio) + fin
+                    + "Calificación más alta: " + total.maxAprobado + fin
+                    + "Calificación más baja: " + total.minAprobado + fin
+                    + "Porcentaje de aprobación: "
+                    + String.format("%.1f%%", (total.aprobados * 100.0 / total.procesados)) + fin;
+        }
+
+        // Modo seguimiento: espera a que los consumidores hayan clasificado las
+        // primeras registros calificaciones y reescribe el resumen en curso al
+        // final del reporte, detrás de todo el detalle escrito hasta ahora.
+        // Mientras el productor no envíe más, los consumidores están parados y
+        // sus acumuladores se pueden leer sin carreras.
+        void actualizarResumen(long registros) throws IOException, InterruptedException {
+            esperarPublicados(registros);
+            AcumuladorCalificaciones parcial = new AcumuladorCalificaciones();
+            for (Consumidor consumidor : consumidores) {
+                parcial.combinar(consumidor.acumulador);
+            }
+            RankingCalificaciones rankingParcial = rankingCombinado();
+            escritura.sincronizar();
+            escritor.escribirProvisional(conteos(parcial, "RESUMEN EN CURSO") + estadisticas(parcial)
+                    + (rankingParcial != null ? rankingParcial.texto(parcial) : ""));
+            System.out.println("SEGUIMIENTO: " + parcial.procesados + " calificaciones procesadas, "
+                    + parcial.aprobados + " aprobadas");
+        }
+
+        // Completa y guarda un punto de control cuando los consumidores ya
+        // clasificaron las registros calificaciones enviadas en esta corrida.
+        // Igual que en actualizarResumen, el productor está detenido
+        // esperando, así que los acumuladores se leen sin carreras.
+        void guardarPuntoControl(PuntoControl punto, long registros) throws IOException, InterruptedException {
+            esperarPublicados(registros);
+            AcumuladorCalificaciones parcial = new AcumuladorCalificaciones();
+            for (Consumidor consumidor : consumidores) {
+                parcial.combinar(consumidor.acumulador);
+            }
+            punto.acumulador = parcial;
+            punto.ranking = rankingCombinado();
+            escritura.sincronizar();
+            punto.longitudReporte = escritor.asegurar();
+            punto.guardar();
+        }
+
+        // Espera a que los consumidores hayan clasificado registros
+        // calificaciones; si alguno falló, o falló la escritura, no llegarán
+        // nunca, así que se corta la espera
+        private void esperarPublicados(long registros) throws InterruptedException {
+            int intento = 0;
+            while (publicados() < registros) {
+                if (fallo() != null) {
+                    throw flujoCancelado();
+                }
+                esperarTurno(intento++);
+            }
+        }
 
-        public BufferCalificaciones(int capacidad) {
-            this.buffer = new ArrayList<>();
-            this.capacidad = capacidad;
+        // Primer fallo de un consumidor o de la etapa de escritura, o null
+        IOException fallo() {
+            for (Consumidor consumidor : consumidores) {
+                Exception error = consumidor.error;
+                if (error != null) {
+                    return new IOException(consumidor.etiqueta + ": " + error.getMessage(), error);
+                }
+            }
+            IOException error = escritura.error();
+            if (error != null) {
+                return new IOException("la escritura de '" + escritor.archivo() + "' falló: " + error.getMessage(),
+                        error);
+            }
+            return null;
         }
 
-        // Método para que el productor añada una calificación al buffer
-        public synchronized void producir(Float calificacion) throws InterruptedException {
-            // Esperar si el buffer está lleno
-            while (buffer.size() == capacidad) {
-                wait();
+        long bloquesEscritos() {
+            return escritura.bloquesEscritos;
+        }
+
+        long publicados() {
+            long suma = 0;
+            for (Consumidor consumidor : consumidores) {
+                suma += consumidor.publicados;
             }
-            buffer.add(calificacion);
-            // Notificar a los hilos en espera (especialmente al consumidor)
-            notifyAll();
+            return suma;
         }
 
-        // Método para que el consumidor obtenga una calificación del buffer
-        public synchronized Float consumir() throws InterruptedException {
-            // Esperar si el buffer está vacío y la producción no ha terminado
-            while (buffer.isEmpty() && !produccionTerminada) {
-                wait();
+        // Mezcla los listados de todos los consumidores por posición en el
+        // flujo, para numerarlos en el orden original
+        private void escribirListadoAprobados() throws IOException {
+            for (Consumidor consumidor : consumidores) {
+                if (!consumidor.listado.ordenado) {
+                    escribirListadoDisperso();
+                    return;
+                }
+            }
+            int k = consumidores.length;
+            DataInputStream[] entradas = new DataInputStream[k];
+            long[] posiciones = new long[k];
+            float[] valores = new float[k];
+            long[] pendientes = new long[k];
+            for (int i = 0; i < k; i++) {
+                entradas[i] = consumidores[i].listado.abrir();
+                pendientes[i] = consumidores[i].acumulador.aprobados;
+                if (pendientes[i] > 0) {
+                    posiciones[i] = entradas[i].readLong();
+                    valores[i] = entradas[i].readFloat();
+                }
             }
 
-            // Si la producción ha terminado y el buffer está vacío, retornar null
-            if (buffer.isEmpty() && produccionTerminada) {
-                return null;
+            long numero = 0;
+            while (true) {
+                int elegido = -1;
+                for (int i = 0; i < k; i++) {
+                    if (pendientes[i] > 0 && (elegido < 0 || posiciones[i] < posiciones[elegido])) {
+                        elegido = i;
+                    }
+                }
+                if (elegido < 0) {
+                    break;
+                }
+                escritor.escribirLinea("  " + (++numero) + ". " + valores[elegido]);
+                if (--pendientes[elegido] > 0) {
+                    posiciones[elegido] = entradas[elegido].readLong();
+                    valores[elegido] = entradas[elegido].readFloat();
+                }
             }
 
-            // Consumir el primer elemento del buffer
-            Float calificacion = buffer.remove(0);
-            // Notificar a los hilos en espera (especialmente al productor)
-            notifyAll();
-            return calificacion;
+            for (int i = 0; i < k; i++) {
+                entradas[i].close();
+                consumidores[i].listado.borrar();
+            }
         }
 
-        // Método para notificar al consumidor que el productor ha terminado
-        public synchronized void terminarProduccion() {
-            this.produccionTerminada = true;
-            // Despertar a cualquier hilo consumidor que esté esperando
-            notifyAll();
+        // Casillas por pasada de escribirListadoDisperso (128 MB de float)
+        private static final int VENTANA_LISTADO = 32 * 1024 * 1024;
+
+        // Listados desordenados (varios productores): cada pasada reparte en
+        // un archivo temporal mapeado los aprobados de una ventana de
+        // posiciones, una casilla float por registro (NaN si no aprobó), y la
+        // recorre en orden. La memoria no depende del tamaño de la entrada.
+        private void escribirListadoDisperso() throws IOException {
+            long registros = 0;
+            for (Consumidor consumidor : consumidores) {
+                registros = Math.max(registros, consumidor.listado.mayor + 1);
+            }
+            File temporal = File.createTempFile("listado", ".bin");
+            temporal.deleteOnExit();
+            try (FileChannel canal = FileChannel.open(temporal.toPath(), StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                long numero = 0;
+                for (long desde = 0; desde < registros; desde += VENTANA_LISTADO) {
+                    int casillas = (int) Math.min(VENTANA_LISTADO, registros - desde);
+                    MappedByteBuffer ventana = canal.map(FileChannel.MapMode.READ_WRITE, 0, 4L * casillas);
+                    for (int i = 0; i < casillas; i++) {
+                        ventana.putFloat(4 * i, Float.NaN);
+                    }
+                    for (Consumidor consumidor : consumidores) {
+                        try (DataInputStream entrada = consumidor.listado.abrir()) {
+                            for (long n = consumidor.acumulador.aprobados; n > 0; n--) {
+                                long posicion = entrada.readLong();
+                                float valor = entrada.readFloat();
+                                if (posicion >= desde && posicion < desde + casillas) {
+                                    ventana.putFloat((int) (4 * (posicion - desde)), valor);
+                                }
+                            }
+                        }
+                    }
+                    for (int i = 0; i < casillas; i++) {
+                        float valor = ventana.getFloat(4 * i);
+                        if (!Float.isNaN(valor)) {
+                            escritor.escribirLinea("  " + (++numero) + ". " + valor);
+                        }
+                    }
+                }
+            } finally {
+                temporal.delete();
+                for (Consumidor consumidor : consumidores) {
+                    consumidor.listado.borrar();
+                }
+            }
+        }
+
+        private void mostrarResumen(AcumuladorCalificaciones total) {
+            String archivoSalida = escritor.archivo();
+            // Mostrar resumen en consola
+            System.out.println("\n========================================");
+            System.out.println("CONSUMIDOR: Procesamiento terminado");
+            System.out.println("========================================");
+            System.out.println("Total procesados: " + total.procesados);
+            System.out.println("Aprobados: " + total.aprobados + " (" +
+                    String.format("%.1f%%", (total.aprobados * 100.0 / total.procesados)) + ")");
+            System.out.println("Reprobados: " + total.reprobados() + " (" +
+                    String.format("%.1f%%", (total.reprobados() * 100.0 / total.procesados)) + ")");
+
+            if (total.aprobados > 0) {
+                float promedio = (float) total.mediaAprobados;
+                System.out.println("Promedio de aprobados: " + String.format("%.2f", promedio));
+                System.out.println("Desviación estándar de aprobados: " +
+                        String.format("%.2f", total.desviacionAprobados()));
+            }
+            if (total.procesados > 0 && ranking != null) {
+                System.out.println("Mediana general: " + total.mediana() + ", percentil 90: " + total.percentil(90));
+                int mejor = ranking.mejores.enOrden()[0];
+                System.out.println("Mejor calificación: Alumno " + ranking.mejores.alumno(mejor) + " con "
+                        + ranking.mejores.valor(mejor));
+            } else if (total.procesados > 0) {
+                System.out.println("Mediana general (aprox.): " + total.percentil(50) +
+                        ", percentil 90: " + total.percentil(90));
+            }
+
+            System.out.println("\nArchivo de salida generado: '" + archivoSalida + "'");
+        }
+
+        // Tiempo que cada etapa del lado consumidor pasó bloqueada
+        void mostrarContrapresion() {
+            long esperaEntrada = 0;
+            for (Consumidor consumidor : consumidores) {
+                esperaEntrada += consumidor.nanosEsperandoEntrada;
+            }
+            System.out.println("Clasificación: " + milisegundos(esperaEntrada) + " esperando calificaciones, "
+                    + milisegundos(escritura.nanosEsperaConsumidores.get()) + " esperando bloques libres ("
+                    + escritura.esperasConsumidores.get() + " esperas)");
+            System.out.println("Escritura: " + milisegundos(escritura.nanosEscribiendo) + " escribiendo "
+                    + escritura.bloquesEscritos + " bloques, " + milisegundos(escritura.nanosOcioso) + " ociosa");
         }
     }
 
-    // Clase Productor que lee calificaciones del archivo
-    // Ahora es una clase estática anidada.
-    static class Productor extends Thread {
-        private BufferCalificaciones buffer;
-        private String archivoEntrada;
+    // Atributos de la instrumentación del pipeline que se publican por JMX
+    // como calificaciones:type=Pipeline
+    public interface MetricasPipelineMBean {
+        long getCalificacionesLeidas();
 
-        public Productor(BufferCalificaciones buffer, String archivoEntrada) {
-            this.buffer = buffer;
-            this.archivoEntrada = archivoEntrada;
+        long getCalificacionesClasificadas();
+
+        long getBloquesEscritos();
+
+        double getLecturaPorSegundo();
+
+        double getClasificacionPorSegundo();
+
+        int getProfundidadBuffer();
+
+        int getCapacidadBuffer();
+
+        long getEsperasProductorBufferLleno();
+
+        long getEsperasConsumidorBufferVacio();
+
+        double getEsperaProductorP99Micros();
+
+        double getEsperaConsumidorP99Micros();
+
+        double getLatenciaEntregaP50Micros();
+
+        double getLatenciaEntregaP99Micros();
+    }
+
+    // Instrumentación del pipeline: avance de cada etapa, profundidad del
+    // buffer, esperas por buffer lleno y vacío y latencia de entrega. Un hilo
+    // toma una muestra en cada intervalo para calcular el ritmo de cada etapa
+    // y, si se pidió, la escribe como una línea de registro. Los contadores
+    // se leen sin detener a nadie, así que cada muestra es aproximada.
+    static class MetricasPipeline implements MetricasPipelineMBean {
+        private final ProduccionParalela produccion;
+        private final PoolConsumidores consumidores;
+        private final int capacidad;
+        private final long intervaloMs;
+        private final boolean registro;
+        private Thread muestreo;
+        private ObjectName nombreJmx;
+        private volatile double lecturaPorSegundo;
+        private volatile double clasificacionPorSegundo;
+
+        public MetricasPipeline(ProduccionParalela produccion, PoolConsumidores consumidores, int capacidad,
+                long intervaloMs, boolean registro) {
+            this.produccion = produccion;
+            this.consumidores = consumidores;
+            this.capacidad = capacidad;
+            this.intervaloMs = intervaloMs;
+            this.registro = registro;
         }
 
-        @Override
-        public void run() {
+        // Un fallo al publicar por JMX no detiene el procesamiento
+        void publicarJmx() {
             try {
-                // Generar archivo de calificaciones si no existe
-                generarArchivoCalificaciones();
+                nombreJmx = new ObjectName("calificaciones:type=Pipeline");
+                ManagementFactory.getPlatformMBeanServer()
+                        .registerMBean(new StandardMBean(this, MetricasPipelineMBean.class), nombreJmx);
+            } catch (JMException e) {
+                System.err.println("No se pudieron publicar las métricas por JMX: " + e.getMessage());
+                nombreJmx = null;
+            }
+        }
 
-                // Leer calificaciones del archivo
-                BufferedReader reader = new BufferedReader(new FileReader(archivoEntrada));
-                String linea;
-                int contador = 0;
+        void iniciar() {
+            muestreo = new Thread(this::muestrear, "METRICAS");
+            muestreo.setDaemon(true);
+            muestreo.start();
+        }
 
-                System.out.println("PRODUCTOR: Iniciando lectura de calificaciones...\n");
+        void detener() throws InterruptedException {
+            muestreo.interrupt();
+            muestreo.join();
+            if (nombreJmx != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(nombreJmx);
+                } catch (JMException e) {
+                    // ya no estaba registrado
+                }
+            }
+        }
 
-                while ((linea = reader.readLine()) != null && contador < 20) {
-                    Float calificacion = Float.parseFloat(linea.trim());
-                    buffer.producir(calificacion);
-                    System.out.println("PRODUCTOR: Enviando calificación #" + (contador + 1) + " = " + calificacion);
-                    Thread.sleep(100); // Simular tiempo de producción
-                    contador++;
+        private void muestrear() {
+            long inicio = System.nanoTime();
+            long anterior = inicio;
+            long leidasAntes = 0;
+            long clasificadasAntes = 0;
+            try {
+                while (true) {
+                    Thread.sleep(intervaloMs);
+                    long ahora = System.nanoTime();
+                    long leidas = getCalificacionesLeidas();
+                    long clasificadas = getCalificacionesClasificadas();
+                    double segundos = (ahora - anterior) / 1e9;
+                    lecturaPorSegundo = (leidas - leidasAntes) / segundos;
+                    clasificacionPorSegundo = (clasificadas - clasificadasAntes) / segundos;
+                    if (registro) {
+                        System.out.println(String.format("MÉTRICAS %.1fs: leídas %d (%.0f/s), clasificadas %d"
+                                + " (%.0f/s), buffer %d/%d, esperas por lleno %d (p99 %.1f µs),"
+                                + " por vacío %d (p99 %.1f µs)",
+                                (ahora - inicio) / 1e9, leidas, lecturaPorSegundo, clasificadas,
+                                clasificacionPorSegundo, getProfundidadBuffer(), capacidad,
+                                getEsperasProductorBufferLleno(), getEsperaProductorP99Micros(),
+                                getEsperasConsumidorBufferVacio(), getEsperaConsumidorP99Micros()));
+                    }
+                    anterior = ahora;
+                    leidasAntes = leidas;
+                    clasificadasAntes = clasificadas;
                 }
+            } catch (InterruptedException e) {
+                // fin del muestreo
+            }
+        }
 
-                reader.close();
-                buffer.terminarProduccion();
-                System.out.println("\nPRODUCTOR: Producción terminada. Total enviadas: " + contador);
+        @Override
+        public long getCalificacionesLeidas() {
+            return produccion.leidas();
+        }
 
-            } catch (Exception e) {
-                System.err.println("Error en Productor: " + e.getMessage());
-                e.printStackTrace();
+        @Override
+        public long getCalificacionesClasificadas() {
+            return consumidores.publicados();
+        }
+
+        @Override
+        public long getBloquesEscritos() {
+            return consumidores.bloquesEscritos();
+        }
+
+        @Override
+        public double getLecturaPorSegundo() {
+            return lecturaPorSegundo;
+        }
+
+        @Override
+        public double getClasificacionPorSegundo() {
+            return clasificacionPorSegundo;
+        }
+
+        @Override
+        public int getProfundidadBuffer() {
+            return produccion.salida.profundidad();
+        }
+
+        @Override
+        public int getCapacidadBuffer() {
+            return capacidad;
+        }
+
+        @Override
+        public long getEsperasProductorBufferLleno() {
+            return produccion.metricas.esperaLleno.total();
+        }
+
+        @Override
+        public long getEsperasConsumidorBufferVacio() {
+            return produccion.metricas.esperaVacio.total();
+        }
+
+        @Override
+        public double getEsperaProductorP99Micros() {
+            return produccion.metricas.esperaLleno.percentil(99) / 1e3;
+        }
+
+        @Override
+        public double getEsperaConsumidorP99Micros() {
+            return produccion.metricas.esperaVacio.percentil(99) / 1e3;
+        }
+
+        @Override
+        public double getLatenciaEntregaP50Micros() {
+            return produccion.latenciaEntrega.percentil(50) / 1e3;
+        }
+
+        @Override
+        public double getLatenciaEntregaP99Micros() {
+            return produccion.latenciaEntrega.percentil(99) / 1e3;
+        }
+    }
+
+    // Procesa un directorio con un archivo de calificaciones por grupo. Cada
+    // grupo tiene su propio productor, BufferCalificaciones y consumidores, y
+    // escribe su reporte <grupo>.aprobados.txt junto a la entrada. El hilo de
+    // cada grupo hace de productor. Con hilos virtuales, miles de grupos pueden
+    // esperar a la vez en sus buffers sin ocupar un hilo del sistema cada uno;
+    // el semáforo solo acota cuántos archivos hay abiertos al mismo tiempo.
+    static class ProcesadorGrupos {
+        static final String SUFIJO_REPORTE = ".aprobados.txt";
+
+        private final Configuracion config;
+        private final Semaphore enCurso;
+        private final AcumuladorCalificaciones total = new AcumuladorCalificaciones();
+        private final AtomicInteger terminados = new AtomicInteger();
+        private final AtomicInteger fallidos = new AtomicInteger();
+
+        public ProcesadorGrupos(Configuracion config) {
+            this.config = config;
+            this.enCurso = new Semaphore(config.gruposSimultaneos);
+        }
+
+        // Archivos de grupo del directorio (texto o binario), en orden de
+        // nombre. Se excluyen los reportes (de esta ejecución o de una
+        // anterior) y el archivo salida, que esta ejecución sobrescribe.
+        static File[] archivosDeGrupo(File directorio, String salida) throws IOException {
+            File excluido = new File(salida).getCanonicalFile();
+            File[] archivos = directorio.listFiles(archivo -> archivo.isFile()
+                    && (archivo.getName().endsWith(".txt")
+                            || archivo.getName().endsWith(LectorCalificacionesBinario.EXTENSION))
+                    && !archivo.getName().endsWith(SUFIJO_REPORTE)
+                    && !mismoArchivo(archivo, excluido));
+            if (archivos == null) {
+                throw new IOException("No es un directorio: " + directorio);
             }
+            Arrays.sort(archivos);
+            return archivos;
         }
 
-        private void generarArchivoCalificaciones() throws IOException {
-            File archivo = new File(archivoEntrada);
-            if (!archivo.exists()) {
-                PrintWriter writer = new PrintWriter(new FileWriter(archivo));
-                Random random = new Random();
+        private static boolean mismoArchivo(File archivo, File canonico) {
+            try {
+                return archivo.getCanonicalFile().equals(canonico);
+            } catch (IOException e) {
+                return false;
+            }
+        }
 
-                System.out.println("Generando archivo de calificaciones...");
+        static File reporteDe(File archivo) {
+            return new File(archivo.getParentFile(), nombreDe(archivo) + SUFIJO_REPORTE);
+        }
 
-                for (int i = 0; i < 20; i++) {
-                    float calificacion = 4.0f + random.nextFloat() * 6.0f;
-                    calificacion = Math.round(calificacion * 10) / 10.0f;
-                    writer.println(calificacion);
+        static String nombreDe(File archivo) {
+            return archivo.getName().substring(0, archivo.getName().lastIndexOf('.'));
+        }
+
+        // Pipeline completo de un archivo: productores, buffer, pool de
+        // consumidores y reporte. Con un productor, el hilo que llama hace de
+        // productor sobre un BufferCalificaciones; con varios, ProduccionParalela
+        // lee el archivo por rangos con sus propios hilos. Devuelve el
+        // acumulador del archivo, o lanza el primer error de lectura o de
+        // procesamiento con el reporte ya cerrado.
+        static AcumuladorCalificaciones procesarArchivo(File archivo, int productores, Configuracion config)
+                throws Exception {
+            ProduccionParalela produccion = null;
+            Productor productor = null;
+            ColaCalificaciones buffer;
+            if (productores > 1) {
+                produccion = new ProduccionParalela(archivo.getPath(), productores, config.capacidad,
+                        config.consumidores);
+                for (Productor paralelo : produccion.productores) {
+                    paralelo.traza = config.traza;
+                    paralelo.latencia = config.latenciaProductor;
+                }
+                buffer = produccion.salida;
+            } else {
+                buffer = new BufferCalificaciones(config.capacidad);
+                productor = new Productor(buffer, archivo.getPath(), nombreDe(archivo), 0, archivo.length());
+                productor.traza = config.traza;
+                productor.latencia = config.latenciaProductor;
+            }
+            try (EscritorReporte escritor = new EscritorReporte(reporteDe(archivo).getPath(), config.vaciado,
+                    64 * 1024, config.intervaloVaciadoMs)) {
+                PoolConsumidores consumidores = new PoolConsumidores(buffer, escritor, config);
+                consumidores.resumenEnConsola = false;
+                if (produccion != null) {
+                    produccion.ordenarCon(consumidores.ventana());
+                } else {
+                    productor.ventana = consumidores.ventana();
+                }
+                consumidores.iniciar();
+                if (produccion != null) {
+                    produccion.iniciar();
+                    produccion.esperar();
+                } else {
+                    productor.run();
+                }
+                consumidores.esperar();
+                Exception error = produccion != null ? produccion.error() : productor.error;
+                if (error != null) {
+                    throw error;
                 }
+                return consumidores.total;
+            }
+        }
 
-                writer.close();
-                System.out.println("Archivo '" + archivoEntrada + "' generado con 20 calificaciones.\n");
+        // Devuelve cuántos grupos fallaron
+        public int ejecutar() throws IOException, InterruptedException {
+            File[] archivos = archivosDeGrupo(new File(config.grupos), config.salida);
+            long inicio = System.nanoTime();
+            for (File archivo : archivos) {
+                enCurso.acquire();
+                String nombre = nombreDe(archivo);
+                Hilos.iniciar("GRUPO " + nombre, () -> {
+                    try {
+                        procesar(archivo, nombre);
+                    } finally {
+                        enCurso.release();
+                    }
+                });
+            }
+            // Todos los permisos de vuelta: no queda ningún grupo en curso
+            enCurso.acquire(config.gruposSimultaneos);
+            long transcurrido = System.nanoTime() - inicio;
+            mostrarResumen(archivos.length, transcurrido);
+            return fallidos.get();
+        }
+
+        private void procesar(File archivo, String nombre) {
+            try {
+                AcumuladorCalificaciones resultado = procesarArchivo(archivo, 1, config);
+                synchronized (total) {
+                    total.combinar(resultado);
+                }
+                terminados.incrementAndGet();
+            } catch (Exception e) {
+                fallidos.incrementAndGet();
+                System.err.println("Error en el grupo " + nombre + ": " + e.getMessage());
+            }
+        }
+
+        private void mostrarResumen(int grupos, long transcurrido) {
+            System.out.println("\n===== GRUPOS =====");
+            System.out.println("Grupos procesados: " + terminados.get() + " de " + grupos
+                    + (fallidos.get() > 0 ? " (" + fallidos.get() + " con error)" : "")
+                    + " en hilos " + (Hilos.usandoVirtuales() ? "virtuales" : "de plataforma"));
+            System.out.println("Registros: " + total.procesados + " en " + milisegundos(transcurrido)
+                    + String.format(" (%.0f registros/s)", total.procesados / (transcurrido / 1e9)));
+            if (total.procesados > 0) {
+                System.out.println("Aprobados: " + total.aprobados + " (" +
+                        String.format("%.1f%%", (total.aprobados * 100.0 / total.procesados)) + ")");
             }
+            System.out.println("Reportes: <grupo>" + SUFIJO_REPORTE + " en '" + config.grupos + "'");
         }
     }
 
-    // Clase Consumidor que procesa solo calificaciones aprobatorias
-    // Ahora es una clase estática anidada.
-    static class Consumidor extends Thread {
-        private BufferCalificaciones buffer;
-        private String archivoSalida;
-        private List<Float> aprobados;
-        private List<Float> reprobados;
+    // Procesamiento por lotes de un directorio en un ForkJoinPool. Cada archivo
+    // pasa por el mismo pipeline que un grupo de --grupos
+    // (ProcesadorGrupos.procesarArchivo); el pool reparte los archivos entre
+    // --paralelismo hilos, y los que se quedan sin trabajo roban tareas
+    // pendientes de los demás:
+    //  - Un archivo de más de TAMANO_TRAMO bytes es una tarea propia y se lee
+    //    con un productor por cada TAMANO_TRAMO bytes (hasta --paralelismo),
+    //    cada uno con su rango, como con --productores.
+    //  - Los archivos pequeños se juntan en paquetes que procesa una sola
+    //    tarea, uno tras otro, para no pagar una tarea por archivo.
+    // Cada archivo deja su <nombre>.aprobados.txt (si falla, se borra) y
+    // --salida recibe el resumen global, con una línea por archivo.
+    static class ProcesadorDirectorio {
+        static final long TAMANO_TRAMO = 8L * 1024 * 1024;
+        static final int ARCHIVOS_POR_PAQUETE = 64;
 
-        public Consumidor(BufferCalificaciones buffer, String archivoSalida) {
-            this.buffer = buffer;
-            this.archivoSalida = archivoSalida;
-            this.aprobados = new ArrayList<>();
-            this.reprobados = new ArrayList<>();
+        private final Configuracion config;
+        private final File[] archivos;
+        private final AcumuladorCalificaciones[] resultados;
+        private final AtomicInteger fallidos = new AtomicInteger();
+
+        public ProcesadorDirectorio(Configuracion config) throws IOException {
+            this.config = config;
+            this.archivos = ProcesadorGrupos.archivosDeGrupo(new File(config.directorio), config.salida);
+            this.resultados = new AcumuladorCalificaciones[archivos.length];
         }
 
-        @Override
-        public void run() {
+        // Devuelve cuántos archivos fallaron
+        public int ejecutar() throws IOException {
+            // Plan: cada archivo grande es una tarea; los pequeños se agrupan
+            // hasta TAMANO_TRAMO bytes o ARCHIVOS_POR_PAQUETE archivos
+            List<RecursiveAction> tareas = new ArrayList<>();
+            List<Integer> paquete = new ArrayList<>();
+            long bytesPaquete = 0;
+            for (int i = 0; i < archivos.length; i++) {
+                long tamano = archivos[i].length();
+                if (tamano >= TAMANO_TRAMO) {
+                    tareas.add(tarea(List.of(i)));
+                    continue;
+                }
+                paquete.add(i);
+                bytesPaquete += tamano;
+                if (bytesPaquete >= TAMANO_TRAMO || paquete.size() == ARCHIVOS_POR_PAQUETE) {
+                    tareas.add(tarea(paquete));
+                    paquete = new ArrayList<>();
+                    bytesPaquete = 0;
+                }
+            }
+            if (!paquete.isEmpty()) {
+                tareas.add(tarea(paquete));
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(config.paralelismo);
+            long inicio = System.nanoTime();
             try {
-                PrintWriter writer = new PrintWriter(new FileWriter(archivoSalida));
-                writer.println("=== CALIFICACIONES APROBATORIAS ===\n");
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tareas);
+                    }
+                });
+            } finally {
+                pool.shutdown();
+            }
+            long transcurrido = System.nanoTime() - inicio;
 
-                System.out.println("\nCONSUMIDOR: Iniciando procesamiento...\n");
+            AcumuladorCalificaciones global = escribirResumenGlobal();
+            System.out.println("\n===== DIRECTORIO =====");
+            System.out.println("Archivos: " + (archivos.length - fallidos.get()) + " de " + archivos.length
+                    + (fallidos.get() > 0 ? " (" + fallidos.get() + " con error)" : "") + " en "
+                    + tareas.size() + " tareas, " + config.paralelismo + " hilos, "
+                    + pool.getStealCount() + " robos de tareas");
+            System.out.println("Registros: " + global.procesados + " en " + milisegundos(transcurrido)
+                    + String.format(" (%.0f registros/s)", global.procesados / (transcurrido / 1e9)));
+            System.out.println("Reportes: <archivo>" + ProcesadorGrupos.SUFIJO_REPORTE + " en '"
+                    + config.directorio + "', resumen global en '" + config.salida + "'");
+            return fallidos.get();
+        }
 
-                int contador = 0;
-                Float calificacion;
+        private RecursiveAction tarea(List<Integer> indices) {
+            return new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    for (int indice : indices) {
+                        procesarArchivo(indice);
+                    }
+                }
+            };
+        }
 
-                // Bucle principal del consumidor
-                while ((calificacion = buffer.consumir()) != null) {
-                    contador++;
-                    System.out.print("CONSUMIDOR: Procesando calificación #" + contador + " = " + calificacion);
+        // Si el archivo falla se borra su reporte a medias
+        private void procesarArchivo(int indice) {
+            File archivo = archivos[indice];
+            long tramos = (archivo.length() + TAMANO_TRAMO - 1) / TAMANO_TRAMO;
+            int productores = (int) Math.max(1, Math.min(config.paralelismo, tramos));
+            try {
+                resultados[indice] = ProcesadorGrupos.procesarArchivo(archivo, productores, config);
+            } catch (Exception e) {
+                ProcesadorGrupos.reporteDe(archivo).delete();
+                fallidos.incrementAndGet();
+                System.err.println("Error en '" + archivo.getPath() + "': " + e.getMessage());
+            }
+        }
 
-                    if (calificacion >= 6.0f) {
-                        aprobados.add(calificacion);
-                        writer.println("Alumno " + contador + ": " + calificacion + " - APROBADO");
-                        writer.flush();
-                        System.out.println(" -> ✓ APROBADO");
-                    } else {
-                        reprobados.add(calificacion);
-                        System.out.println(" -> ✗ Reprobado");
+        // Una línea por archivo y, al final, el resumen de todos combinados
+        private AcumuladorCalificaciones escribirResumenGlobal() throws IOException {
+            AcumuladorCalificaciones global = new AcumuladorCalificaciones();
+            try (EscritorReporte escritor = new EscritorReporte(config.salida, config.vaciado, 64 * 1024,
+                    config.intervaloVaciadoMs)) {
+                escritor.escribirLinea("=== RESUMEN POR ARCHIVO ===\n");
+                for (int i = 0; i < archivos.length; i++) {
+                    AcumuladorCalificaciones resultado = resultados[i];
+                    if (resultado == null) {
+                        escritor.escribirLinea(archivos[i].getName() + ": error");
+                        continue;
                     }
-                    Thread.sleep(150); // Simular tiempo de procesamiento
+                    escritor.escribirLinea(archivos[i].getName() + ": " + resultado.procesados + " procesados, "
+                            + resultado.aprobados + " aprobados" + (resultado.procesados > 0
+                                    ? String.format(" (%.1f%%)", resultado.aprobados * 100.0 / resultado.procesados)
+                                    : ""));
+                    global.combinar(resultado);
                 }
+                escritor.escribir(PoolConsumidores.conteos(global, "RESUMEN GLOBAL"));
+                escritor.escribir(PoolConsumidores.estadisticas(global));
+            }
+            return global;
+        }
+    }
 
-                // Escribir resumen final
-                writer.println("\n\n===== RESUMEN FINAL =====");
-                writer.println("Total de alumnos procesados: " + contador);
-                writer.println("Total de aprobados: " + aprobados.size());
-                writer.println("Total de reprobados: " + reprobados.size());
-                writer.println("\nCalificaciones aprobatorias:");
+    static String milisegundos(long nanos) {
+        return String.format("%.1f ms", nanos / 1e6);
+    }
 
-                for (int i = 0; i < aprobados.size(); i++) {
-                    writer.println("  " + (i + 1) + ". " + aprobados.get(i));
-                }
+    static String microsegundos(long nanos) {
+        return String.format("%.1f µs", nanos / 1e3);
+    }
+
+    // Latencia simulada por calificación, tomada de una distribución:
+    //   fija:100ms, uniforme:50ms-150ms o exponencial:2ms (media)
+    // Unidades admitidas: ns, us, ms y s.
+    static class LatenciaSimulada {
+        private final String tipo;
+        private final long minimoNanos;
+        private final long maximoNanos; // para la exponencial guarda la media
 
-                // Calcular estadísticas
-                if (!aprobados.isEmpty()) {
-                    float suma = 0;
-                    float max = aprobados.get(0);
-                    float min = aprobados.get(0);
+        private LatenciaSimulada(String tipo, long minimoNanos, long maximoNanos) {
+            this.tipo = tipo;
+            this.minimoNanos = minimoNanos;
+            this.maximoNanos = maximoNanos;
+        }
 
-                    for (Float cal : aprobados) {
-                        suma += cal;
-                        if (cal > max)
-                            max = cal;
-                        if (cal < min)
-                            min = cal;
+        static LatenciaSimulada desde(String texto) {
+            int separador = texto.indexOf(':');
+            if (separador < 0) {
+                throw new IllegalArgumentException("Latencia sin distribución: " + texto);
+            }
+            String tipo = texto.substring(0, separador).trim().toLowerCase();
+            String valor = texto.substring(separador + 1).trim();
+            switch (tipo) {
+                case "fija":
+                    long fija = aNanos(valor);
+                    return new LatenciaSimulada(tipo, fija, fija);
+                case "uniforme":
+                    String[] extremos = valor.split("-");
+                    if (extremos.length != 2) {
+                        throw new IllegalArgumentException("Se esperaba uniforme:min-max, no " + texto);
                     }
+                    return new LatenciaSimulada(tipo, aNanos(extremos[0]), aNanos(extremos[1]));
+                case "exp":
+                case "exponencial":
+                    return new LatenciaSimulada("exponencial", 0, aNanos(valor));
+                default:
+                    throw new IllegalArgumentException("Distribución desconocida: " + tipo);
+            }
+        }
+
+        static long aNanos(String texto) {
+            texto = texto.trim().toLowerCase();
+            String[] unidades = { "ns", "us", "ms", "s" };
+            long[] factores = { 1L, 1_000L, 1_000_000L, 1_000_000_000L };
+            for (int i = 0; i < unidades.length; i++) {
+                if (texto.endsWith(unidades[i])) {
+                    String numero = texto.substring(0, texto.length() - unidades[i].length()).trim();
+                    return (long) (Double.parseDouble(numero) * factores[i]);
+                }
+            }
+            throw new IllegalArgumentException("Duración sin unidad (ns, us, ms, s): " + texto);
+        }
 
-                    float promedio = suma / aprobados.size();
+        long siguienteNanos() {
+            ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+            switch (tipo) {
+                case "uniforme":
+                    return minimoNanos + (long) (aleatorio.nextDouble() * (maximoNanos - minimoNanos));
+                case "exponencial":
+                    return (long) (-Math.log(1.0 - aleatorio.nextDouble()) * maximoNanos);
+                default:
+                    return minimoNanos;
+            }
+        }
 
-                    writer.println("\n===== ESTADÍSTICAS DE APROBADOS =====");
-                    writer.println("Promedio: " + String.format("%.2f", promedio));
-                    writer.println("Calificación más alta: " + max);
-                    writer.println("Calificación más baja: " + min);
-                    writer.println("Porcentaje de aprobación: " +
-                            String.format("%.1f%%", (aprobados.size() * 100.0 / contador)));
+        void esperar() throws InterruptedException {
+            long nanos = siguienteNanos();
+            if (nanos >= 1_000_000L) {
+                Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+            } else if (nanos > 0) {
+                LockSupport.parkNanos(nanos);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
                 }
+            }
+        }
+    }
 
-                writer.close();
+    // Parámetros de una ejecución. Se leen de las propiedades del sistema
+    // (-Dcalificaciones.clave=valor) y luego de los argumentos (--clave=valor),
+    // que tienen prioridad. El modo "demo" muestra cada calificación en consola
+    // y lista los aprobados en el resumen; el modo "rendimiento" desactiva
+    // ambas cosas para medir el costo real de la sincronización.
+    static class Configuracion {
+        String entrada = "calificaciones.txt";
+        String salida = "aprobados.txt";
+        int capacidad = 5;
+        int productores = 1;
+        int consumidores = 1;
+        boolean traza = true;
+        boolean listarAprobados = true;
+        PoliticaVaciado vaciado = PoliticaVaciado.POR_TAMANO;
+        long intervaloVaciadoMs = 1000;
+        LatenciaSimulada latenciaProductor;
+        LatenciaSimulada latenciaConsumidor;
+        boolean hilosVirtuales = false;
+        String grupos; // directorio con un archivo por grupo, o null
+        int gruposSimultaneos = 512;
+        String convertir; // archivo binario a generar desde la entrada, o null
+        CodificacionBinaria codificacion = CodificacionBinaria.DECIMAS;
+        boolean seguir = false;
+        long intervaloSeguimientoMs = 500;
+        long inactividadMs = 0;
+        long intervaloMetricasMs = 0; // 0 = sin registro periódico
+        String directorio; // procesamiento por lotes de un directorio, o null
+        int paralelismo = Runtime.getRuntime().availableProcessors();
+        int ranking = 0; // K del ranking de mejores y peores; 0 = sin ranking
+        String puntoControl; // archivo del punto de control, o null
+        long puntoControlCada = 1_000_000;
+        boolean jmx = false;
+        boolean ordenado = false; // detalle en orden de archivo (--orden=ordenado)
 
-                // Mostrar resumen en consola
-                System.out.println("\n========================================");
-                System.out.println("CONSUMIDOR: Procesamiento terminado");
-                System.out.println("========================================");
-                System.out.println("Total procesados: " + contador);
-                System.out.println("Aprobados: " + aprobados.size() + " (" +
-                        String.format("%.1f%%", (aprobados.size() * 100.0 / contador)) + ")");
-                System.out.println("Reprobados: " + reprobados.size() + " (" +
-                        String.format("%.1f%%", (reprobados.size() * 100.0 / contador)) + ")");
+        static final String USO = "Uso: java ProductorConsumidorCalificaciones [--clave=valor ...]\n"
+                + "  --modo=demo|rendimiento       valores por defecto de traza y listado\n"
+                + "  --entrada=ARCHIVO             calificaciones de entrada (calificaciones.txt)\n"
+                + "  --salida=ARCHIVO              reporte de aprobados (aprobados.txt)\n"
+                + "  --capacidad=N                 capacidad de cada buffer (5)\n"
+                + "  --productores=N               hilos productores (1)\n"
+                + "  --consumidores=N              hilos consumidores (1)\n"
+                + "  --orden=libre|ordenado        detalle en orden de llegada o de archivo (libre)\n"
+                + "  --traza=true|false            una línea de consola por calificación\n"
+                + "  --listado=true|false          listado numerado de aprobados en el resumen\n"
+                + "  --ranking=K                   las K mejores y peores con su puesto, mediana\n"
+                + "  --vaciado=POR_TAMANO|POR_TIEMPO|AL_FINAL\n"
+                + "  --intervalo-vaciado=MS        intervalo para POR_TIEMPO (1000)\n"
+                + "  --latencia-productor=DIST     p. ej. fija:100ms, uniforme:50ms-150ms, exp:2ms\n"
+                + "  --latencia-consumidor=DIST\n"
+                + "  --hilos=plataforma|virtuales  tipo de hilo (virtuales requiere Java 21+)\n"
+                + "  --grupos=DIRECTORIO           un productor y consumidor por archivo .txt\n"
+                + "  --grupos-simultaneos=N        grupos en curso a la vez (512)\n"
+                + "  --directorio=DIRECTORIO       procesar todos los archivos en un ForkJoinPool\n"
+                + "  --paralelismo=N               hilos del ForkJoinPool (uno por procesador)\n"
+                + "  --convertir=ARCHIVO           solo convertir la entrada al formato binario\n"
+                + "  --codificacion=decimas|flotante  columna del formato binario (decimas)\n"
+                + "  --seguir=true|false           seguir procesando lo que se agregue a la entrada\n"
+                + "  --intervalo-seguimiento=MS    revisión de la entrada al seguir (500)\n"
+                + "  --inactividad=MS              terminar tras MS sin datos nuevos (0 = Ctrl+C)\n"
+                + "  --punto-control=ARCHIVO       guardar el avance y reanudar desde él tras una caída\n"
+                + "  --punto-control-cada=N        calificaciones entre puntos de control (1000000)\n"
+                + "  --metricas=MS                 registrar una muestra de métricas cada MS\n"
+                + "  --jmx=true|false              publicar las métricas como MBean\n"
+                + "Cada clave también se acepta como propiedad -Dcalificaciones.clave=valor";
 
-                if (!aprobados.isEmpty()) {
-                    float promedio = (float) aprobados.stream()
-                            .mapToDouble(Float::doubleValue)
-                            .average()
-                            .orElse(0.0);
-                    System.out.println("Promedio de aprobados: " + String.format("%.2f", promedio));
+        static Configuracion desde(String[] args) {
+            Map<String, String> valores = new LinkedHashMap<>();
+            for (String nombre : System.getProperties().stringPropertyNames()) {
+                if (nombre.startsWith("calificaciones.")) {
+                    valores.put(nombre.substring("calificaciones.".length()), System.getProperty(nombre));
                 }
+            }
+            for (String arg : args) {
+                int igual = arg.indexOf('=');
+                if (!arg.startsWith("--") || igual < 0) {
+                    throw new IllegalArgumentException("Argumento no reconocido: " + arg);
+                }
+                valores.put(arg.substring(2, igual), arg.substring(igual + 1));
+            }
 
-                System.out.println("\nArchivo de salida generado: '" + archivoSalida + "'");
+            Configuracion config = new Configuracion();
+            // El modo solo cambia los valores por defecto; lo explícito gana.
+            // Con --grupos no tiene sentido una línea de consola por registro.
+            if ("rendimiento".equals(valores.get("modo")) || valores.containsKey("grupos")
+                    || valores.containsKey("directorio")) {
+                config.traza = false;
+                config.listarAprobados = false;
+            } else if (valores.containsKey("modo") && !"demo".equals(valores.get("modo"))) {
+                throw new IllegalArgumentException("Modo desconocido: " + valores.get("modo"));
+            }
+            for (Map.Entry<String, String> entrada : valores.entrySet()) {
+                config.asignar(entrada.getKey(), entrada.getValue().trim());
+            }
+            if (config.seguir && config.productores > 1) {
+                throw new IllegalArgumentException("--seguir admite un solo productor");
+            }
+            if (config.puntoControl != null) {
+                if (config.productores > 1 || config.seguir) {
+                    throw new IllegalArgumentException("--punto-control admite un solo productor y no --seguir");
+                }
+                if (config.listarAprobados) {
+                    throw new IllegalArgumentException("--punto-control requiere --listado=false");
+                }
+            }
+            return config;
+        }
 
-            } catch (Exception e) {
-                System.err.println("Error en Consumidor: " + e.getMessage());
-                e.printStackTrace();
+        private void asignar(String clave, String valor) {
+            switch (clave) {
+                case "modo":
+                    break;
+                case "entrada":
+                    entrada = valor;
+                    break;
+                case "salida":
+                    salida = valor;
+                    break;
+                case "capacidad":
+                    capacidad = positivo(clave, valor);
+                    break;
+                case "productores":
+                    productores = positivo(clave, valor);
+                    break;
+                case "consumidores":
+                    consumidores = positivo(clave, valor);
+                    break;
+                case "orden":
+                    if (!valor.equals("libre") && !valor.equals("ordenado")) {
+                        throw new IllegalArgumentException("orden debe ser libre u ordenado");
+                    }
+                    ordenado = valor.equals("ordenado");
+                    break;
+                case "traza":
+                    traza = Boolean.parseBoolean(valor);
+                    break;
+                case "listado":
+                    listarAprobados = Boolean.parseBoolean(valor);
+                    break;
+                case "vaciado":
+                    vaciado = PoliticaVaciado.valueOf(valor.toUpperCase());
+                    break;
+                case "intervalo-vaciado":
+                    intervaloVaciadoMs = positivo(clave, valor);
+                    break;
+                case "latencia-productor":
+                    latenciaProductor = LatenciaSimulada.desde(valor);
+                    break;
+                case "latencia-consumidor":
+                    latenciaConsumidor = LatenciaSimulada.desde(valor);
+                    break;
+                case "hilos":
+                    if (!valor.equals("plataforma") && !valor.equals("virtuales")) {
+                        throw new IllegalArgumentException("hilos debe ser plataforma o virtuales");
+                    }
+                    hilosVirtuales = valor.equals("virtuales");
+                    break;
+                case "grupos":
+                    grupos = valor;
+                    break;
+                case "grupos-simultaneos":
+                    gruposSimultaneos = positivo(clave, valor);
+                    break;
+                case "ranking":
+                    ranking = Integer.parseInt(valor);
+                    if (ranking < 0) {
+                        throw new IllegalArgumentException("ranking no puede ser negativo");
+                    }
+                    break;
+                case "directorio":
+                    directorio = valor;
+                    break;
+                case "paralelismo":
+                    paralelismo = positivo(clave, valor);
+                    break;
+                case "convertir":
+                    convertir = valor;
+                    break;
+                case "seguir":
+                    seguir = Boolean.parseBoolean(valor);
+                    break;
+                case "intervalo-seguimiento":
+                    intervaloSeguimientoMs = positivo(clave, valor);
+                    break;
+                case "punto-control":
+                    puntoControl = valor;
+                    break;
+                case "punto-control-cada":
+                    puntoControlCada = positivo(clave, valor);
+                    break;
+                case "metricas":
+                    intervaloMetricasMs = positivo(clave, valor);
+                    break;
+                case "jmx":
+                    jmx = Boolean.parseBoolean(valor);
+                    break;
+                case "inactividad":
+                    inactividadMs = Long.parseLong(valor);
+                    if (inactividadMs < 0) {
+                        throw new IllegalArgumentException("inactividad no puede ser negativa");
+                    }
+                    break;
+                case "codificacion":
+                    if (!valor.equals("decimas") && !valor.equals("flotante")) {
+                        throw new IllegalArgumentException("codificacion debe ser decimas o flotante");
+                    }
+                    codificacion = valor.equals("decimas") ? CodificacionBinaria.DECIMAS : CodificacionBinaria.FLOTANTE;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Clave desconocida: " + clave);
+            }
+        }
+
+        private static int positivo(String clave, String valor) {
+            int numero = Integer.parseInt(valor);
+            if (numero < 1) {
+                throw new IllegalArgumentException(clave + " debe ser mayor que cero");
+            }
+            return numero;
+        }
+    }
+
+    // Modo seguimiento: cada ronda de datos nuevos actualiza el resumen en
+    // curso del reporte. Ctrl+C detiene el seguimiento y espera a que se
+    // escriba el resumen final.
+    // Gancho de cierre del modo seguimiento, o null
+    private static Thread ganchoSeguimiento;
+
+    // Termina con código 1. El gancho del modo seguimiento espera a que
+    // termine el hilo principal, así que se quita antes de salir; si el
+    // cierre ya empezó (Ctrl+C), basta con dejar terminar el hilo principal.
+    private static void salirConError() {
+        if (ganchoSeguimiento != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(ganchoSeguimiento);
+            } catch (IllegalStateException e) {
+                return;
             }
         }
+        System.exit(1);
+    }
+
+    private static void seguirEntrada(Configuracion config, ProduccionParalela produccion,
+            PoolConsumidores consumidores) {
+        Productor.Seguimiento seguimiento = new Productor.Seguimiento() {
+            @Override
+            void terminada(long enviados) throws IOException, InterruptedException {
+                consumidores.actualizarResumen(enviados);
+            }
+        };
+        seguimiento.intervaloMs = config.intervaloSeguimientoMs;
+        seguimiento.inactividadMs = config.inactividadMs;
+        produccion.productores[0].seguimiento = seguimiento;
+
+        Thread principal = Thread.currentThread();
+        ganchoSeguimiento = new Thread(() -> {
+            seguimiento.detener = true;
+            try {
+                principal.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(ganchoSeguimiento);
+        System.out.println("Siguiendo '" + config.entrada + "'"
+                + (config.inactividadMs > 0 ? " hasta " + config.inactividadMs + " ms sin datos nuevos" : "")
+                + "; Ctrl+C para terminar\n");
+    }
+
+    // Puntos de control: se toma uno cada puntoControlCada calificaciones.
+    // Un fallo al guardarlo no detiene el procesamiento; queda el anterior.
+    private static void tomarPuntosControl(Configuracion config, ProduccionParalela produccion,
+            PoolConsumidores consumidores, long base) {
+        Productor.PuntosControl puntos = new Productor.PuntosControl() {
+            @Override
+            void tomar(long enviados, long desplazamiento) throws InterruptedException {
+                PuntoControl punto = new PuntoControl(config.puntoControl);
+                punto.entrada = config.entrada;
+                punto.salida = config.salida;
+                punto.desplazamiento = desplazamiento;
+                punto.registros = base + enviados;
+                try {
+                    consumidores.guardarPuntoControl(punto, enviados);
+                } catch (IOException e) {
+                    System.err.println("No se pudo guardar el punto de control: " + e.getMessage());
+                }
+            }
+        };
+        puntos.cada = config.puntoControlCada;
+        produccion.productores[0].puntosControl = puntos;
     }
 
     public static void main(String[] args) {
@@ -230,21 +4169,142 @@ public class ProductorConsumidorCalificaciones {
         System.out.println("║  SISTEMA PRODUCTOR-CONSUMIDOR DE CALIFICACIONES      ║");
         System.out.println("╚══════════════════════════════════════════════════════╝\n");
 
-        // Crear buffer compartido con capacidad de 5
-        BufferCalificaciones buffer = new BufferCalificaciones(5);
+        Configuracion config;
+        try {
+            config = Configuracion.desde(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println(Configuracion.USO);
+            return;
+        }
+        if (!Hilos.usarVirtuales(config.hilosVirtuales) && config.hilosVirtuales) {
+            System.out.println("Esta JVM no tiene hilos virtuales; se usan hilos de plataforma.\n");
+        }
+
+        try {
+            if (config.convertir != null) {
+                long inicio = System.nanoTime();
+                long registros = ConversorCalificaciones.convertir(config.entrada, config.convertir,
+                        config.codificacion);
+                System.out.println("Convertidas " + registros + " calificaciones en "
+                        + milisegundos(System.nanoTime() - inicio) + ": '" + config.entrada + "' ("
+                        + new File(config.entrada).length() + " bytes) -> '" + config.convertir + "' ("
+                        + new File(config.convertir).length() + " bytes, " + config.codificacion + ")");
+                return;
+            }
+            if (config.grupos != null || config.directorio != null) {
+                if (config.grupos != null) {
+                    int fallidos = new ProcesadorGrupos(config).ejecutar();
+                    if (fallidos > 0) {
+                        System.err.println("Error: " + fallidos + " grupo(s) fallaron; sus reportes están incompletos");
+                        salirConError();
+                        return;
+                    }
+                } else {
+                    int fallidos = new ProcesadorDirectorio(config).ejecutar();
+                    if (fallidos > 0) {
+                        System.err.println("Error: " + fallidos + " archivo(s) fallaron; sus reportes se borraron");
+                        salirConError();
+                        return;
+                    }
+                }
+                System.out.println("\n╔══════════════════════════════════════════════════════╗");
+                System.out.println("║              PROCESO COMPLETADO EXITOSAMENTE         ║");
+                System.out.println("╚══════════════════════════════════════════════════════╝");
+                return;
+            }
+
+            // Crear los productores sobre buffers de la capacidad pedida. Con
+            // un solo productor y un solo consumidor se usa el anillo SPSC.
+            ProduccionParalela produccion = new ProduccionParalela(config);
+            // Si hay un punto de control se reanuda desde él: el reporte se
+            // corta a la longitud que tenía y el productor empieza en su byte
+            PuntoControl previo = null;
+            if (config.puntoControl != null) {
+                previo = PuntoControl.cargar(config.puntoControl);
+                if (previo != null) {
+                    previo.validar(config);
+                    produccion.productores[0].inicio = previo.desplazamiento;
+                    System.out.println("Reanudando desde '" + config.puntoControl + "': " + previo.registros
+                            + " calificaciones ya procesadas\n");
+                }
+            }
+            EscritorReporte escritor = new EscritorReporte(config.salida,
+                    previo != null ? previo.longitudReporte : 0, config.vaciado, 64 * 1024,
+                    config.intervaloVaciadoMs);
+            PoolConsumidores consumidores = new PoolConsumidores(produccion.salida, escritor, config);
+            produccion.ordenarCon(consumidores.ventana());
+            if (previo != null) {
+                consumidores.reanudar(previo);
+            }
+            if (config.puntoControl != null) {
+                tomarPuntosControl(config, produccion, consumidores, previo != null ? previo.registros : 0);
+            }
+            if (config.seguir) {
+                seguirEntrada(config, produccion, consumidores);
+            }
+            MetricasPipeline metricas = null;
+            if (config.intervaloMetricasMs > 0 || config.jmx) {
+                metricas = new MetricasPipeline(produccion, consumidores, config.capacidad,
+                        config.intervaloMetricasMs > 0 ? config.intervaloMetricasMs : 1000,
+                        config.intervaloMetricasMs > 0);
+                if (config.jmx) {
+                    metricas.publicarJmx();
+                }
+            }
+
+            // Iniciar hilos
+            long inicio = System.nanoTime();
+            if (metricas != null) {
+                metricas.iniciar();
+            }
+            produccion.iniciar();
+            consumidores.iniciar();
 
-        // Crear hilos productor y consumidor
-        Productor productor = new Productor(buffer, "calificaciones.txt");
-        Consumidor consumidor = new Consumidor(buffer, "aprobados.txt");
+            // Esperar a que terminen todos los hilos
+            produccion.esperar();
+            IOException errorProcesamiento = null;
+            try {
+                consumidores.esperar();
+            } catch (IOException e) {
+                errorProcesamiento = e;
+            }
+            long transcurrido = System.nanoTime() - inicio;
+            if (metricas != null) {
+                metricas.detener();
+            }
+            // Si falló la lectura o el procesamiento el reporte está
+            // incompleto: no se da por terminada la corrida ni se borra el
+            // punto de control
+            if (errorProcesamiento != null) {
+                System.err.println("Error: el procesamiento falló (" + errorProcesamiento.getMessage()
+                        + "); '" + config.salida + "' quedó incompleto");
+                salirConError();
+                return;
+            }
+            Exception errorLectura = produccion.error();
+            if (errorLectura != null) {
+                System.err.println("Error: la lectura de la entrada falló (" + errorLectura.getMessage()
+                        + "); '" + config.salida + "' quedó incompleto");
+                salirConError();
+                return;
+            }
+            if (config.puntoControl != null) {
+                // Corrida completa: la próxima empieza de cero
+                new File(config.puntoControl).delete();
+            }
 
-        // Iniciar hilos
-        productor.start();
-        consumidor.start();
+            System.out.println("\n===== RENDIMIENTO =====");
+            System.out.println("Configuración: capacidad " + config.capacidad + ", " + config.productores
+                    + " productor(es), " + config.consumidores + " consumidor(es)");
+            System.out.println("Registros: " + consumidores.total.procesados + " en " + milisegundos(transcurrido)
+                    + String.format(" (%.0f registros/s)", consumidores.total.procesados / (transcurrido / 1e9)));
+            System.out.println("Latencia de entrega: p50 " + microsegundos(produccion.latenciaEntrega.percentil(50))
+                    + ", p99 " + microsegundos(produccion.latenciaEntrega.percentil(99)));
 
-        try {
-            // Esperar a que terminen ambos hilos
-            productor.join();
-            consumidor.join();
+            System.out.println("\n===== CONTRAPRESIÓN POR ETAPA =====");
+            produccion.mostrarContrapresion();
+            consumidores.mostrarContrapresion();
 
             System.out.println("\n╔══════════════════════════════════════════════════════╗");
             System.out.println("║              PROCESO COMPLETADO EXITOSAMENTE         ║");
@@ -253,6 +4313,9 @@ public class ProductorConsumidorCalificaciones {
         } catch (InterruptedException e) {
             System.err.println("Error: Proceso interrumpido");
             e.printStackTrace();
+        } catch (IOException e) {
+            System.err.println("Error al preparar la entrada: " + e.getMessage());
+            e.printStackTrace();
         }
     }
 }
\ No newline at end of file
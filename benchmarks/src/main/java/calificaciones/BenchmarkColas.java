@@ -0,0 +1,27 @@
+package calificaciones;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+// Buffers que admiten varios productores y consumidores, comparados entre sí
+// y con ArrayBlockingQueue y LinkedTransferQueue, por elemento y por lotes,
+// en cada combinación de hilos. El anillo SPSC va aparte (BenchmarkColasSPSC)
+// porque solo admite 1x1.
+//
+//   java -jar target/benchmarks.jar BenchmarkColas -prof gc
+//   java -jar target/benchmarks.jar BenchmarkColas -p hilos=4x4 -p buffer=BufferAnilloMPMC,ArrayBlockingQueue
+public class BenchmarkColas extends TransferenciaColas {
+    @Param({"BufferCalificaciones", "BufferCalificaciones/lotes", "ArrayBlockingQueue", "LinkedTransferQueue",
+            "BufferAnilloMPMC", "BufferAnilloMPMC/lotes"})
+    String buffer;
+
+    // PxC: productores x consumidores
+    @Param({"1x1", "2x2", "4x4"})
+    String hilos;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        preparar(buffer, hilos);
+    }
+}
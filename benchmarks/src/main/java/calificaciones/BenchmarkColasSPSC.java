@@ -0,0 +1,19 @@
+package calificaciones;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+// El anillo SPSC, por elemento y por lotes, con un productor y un consumidor:
+// sus resultados se comparan con los de hilos=1x1 en BenchmarkColas.
+//
+//   java -jar target/benchmarks.jar BenchmarkColasSPSC -prof gc
+public class BenchmarkColasSPSC extends TransferenciaColas {
+    @Param({"BufferAnilloSPSC", "BufferAnilloSPSC/lotes"})
+    String buffer;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        preparar(buffer, "1x1");
+    }
+}
@@ -0,0 +1,161 @@
+package calificaciones;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.function.IntFunction;
+
+// Buffers bajo prueba y cargas de productor y consumidor que comparten los
+// bancos de pruebas. Los buffers del proyecto y las colas estándar se adaptan
+// a la interfaz Cola, con solo lo necesario para la carga.
+final class Colas {
+    static final int TAMANO_LOTE = 64;
+
+    private Colas() {
+    }
+
+    interface Cola {
+        void producir(float calificacion) throws InterruptedException;
+
+        float consumir() throws InterruptedException;
+
+        // Variante por lotes; por defecto elemento a elemento
+        default void producirLote(float[] origen, int n) throws InterruptedException {
+            for (int i = 0; i < n; i++) {
+                producir(origen[i]);
+            }
+        }
+
+        default int consumirLote(float[] destino, int max) throws InterruptedException {
+            destino[0] = consumir();
+            return 1;
+        }
+    }
+
+    // Adapta un buffer del proyecto; con porLotes usa producirLote/consumirLote
+    static class ColaProyecto implements Cola {
+        private final ProductorConsumidorCalificaciones.ColaCalificaciones buffer;
+
+        ColaProyecto(ProductorConsumidorCalificaciones.ColaCalificaciones buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void producir(float calificacion) throws InterruptedException {
+            buffer.producir(calificacion);
+        }
+
+        @Override
+        public float consumir() throws InterruptedException {
+            return buffer.consumir();
+        }
+
+        @Override
+        public void producirLote(float[] origen, int n) throws InterruptedException {
+            buffer.producirLote(origen, n);
+        }
+
+        @Override
+        public int consumirLote(float[] destino, int max) throws InterruptedException {
+            return buffer.consumirLote(destino, max);
+        }
+    }
+
+    // Adapta una BlockingQueue<Float> de java.util.concurrent (con boxing)
+    static class ColaEstandar implements Cola {
+        private final BlockingQueue<Float> cola;
+
+        ColaEstandar(BlockingQueue<Float> cola) {
+            this.cola = cola;
+        }
+
+        @Override
+        public void producir(float calificacion) throws InterruptedException {
+            cola.put(calificacion);
+        }
+
+        @Override
+        public float consumir() throws InterruptedException {
+            return cola.take();
+        }
+    }
+
+    static class Candidato {
+        final IntFunction<Cola> fabrica;
+        final boolean porLotes;
+        final boolean soloUnoAUno; // solo admite un productor y un consumidor
+
+        Candidato(IntFunction<Cola> fabrica, boolean porLotes, boolean soloUnoAUno) {
+            this.fabrica = fabrica;
+            this.porLotes = porLotes;
+            this.soloUnoAUno = soloUnoAUno;
+        }
+    }
+
+    // El candidato con ese nombre; "/lotes" pide la variante por lotes
+    static Candidato candidato(String nombre) {
+        boolean porLotes = nombre.endsWith("/lotes");
+        switch (porLotes ? nombre.substring(0, nombre.length() - "/lotes".length()) : nombre) {
+            case "BufferCalificaciones":
+                return new Candidato(c -> new ColaProyecto(new ProductorConsumidorCalificaciones.BufferCalificaciones(c)),
+                        porLotes, false);
+            case "BufferAnilloSPSC":
+                return new Candidato(c -> new ColaProyecto(new ProductorConsumidorCalificaciones.BufferAnilloSPSC(c)),
+                        porLotes, true);
+            case "BufferAnilloMPMC":
+                return new Candidato(c -> new ColaProyecto(new ProductorConsumidorCalificaciones.BufferAnilloMPMC(c)),
+                        porLotes, false);
+            case "ArrayBlockingQueue":
+                if (!porLotes) {
+                    return new Candidato(c -> new ColaEstandar(new ArrayBlockingQueue<>(c)), false, false);
+                }
+                break;
+            case "LinkedTransferQueue":
+                // Sin capacidad: referencia de cola no acotada, la capacidad no
+                // le afecta
+                if (!porLotes) {
+                    return new Candidato(c -> new ColaEstandar(new LinkedTransferQueue<>()), false, false);
+                }
+                break;
+            default:
+                break;
+        }
+        throw new IllegalArgumentException("Buffer desconocido: " + nombre);
+    }
+
+    // Carga de un productor: deposita n calificaciones, por lotes o de una en una
+    static void producir(Cola cola, boolean porLotes, long n) throws InterruptedException {
+        float[] lote = new float[TAMANO_LOTE];
+        for (int i = 0; i < lote.length; i++) {
+            lote[i] = (i % 101) / 10.0f;
+        }
+        if (porLotes) {
+            for (long enviados = 0; enviados < n; enviados += TAMANO_LOTE) {
+                cola.producirLote(lote, (int) Math.min(TAMANO_LOTE, n - enviados));
+            }
+        } else {
+            for (long i = 0; i < n; i++) {
+                cola.producir(lote[(int) (i % TAMANO_LOTE)]);
+            }
+        }
+    }
+
+    // Carga de un consumidor: retira n calificaciones; devuelve una suma para
+    // que el JIT no elimine el consumo
+    static float consumir(Cola cola, boolean porLotes, long n) throws InterruptedException {
+        float[] lote = new float[TAMANO_LOTE];
+        float suma = 0;
+        long recibidos = 0;
+        while (recibidos < n) {
+            if (porLotes) {
+                int tomados = cola.consumirLote(lote, (int) Math.min(TAMANO_LOTE, n - recibidos));
+                suma += lote[0];
+                recibidos += tomados;
+            } else {
+                suma += cola.consumir();
+                recibidos++;
+            }
+        }
+        return suma;
+    }
+}
@@ -0,0 +1,93 @@
+package calificaciones;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Carga común de los bancos de colas: cada invocación transfiere OPERACIONES
+// calificaciones entre P productores y C consumidores (Colas.producir y
+// Colas.consumir). Cada subclase declara qué buffers y combinaciones de hilos
+// barre y llama a preparar() en su @Setup. Con -prof gc,
+// gc.alloc.rate.norm da los bytes asignados por calificación.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class TransferenciaColas {
+    // Calificaciones por invocación; reparte el costo de despertar a los hilos
+    static final int OPERACIONES = 100_000;
+
+    @Param({"1", "5", "64", "1024"})
+    int capacidad;
+
+    private Colas.Candidato candidato;
+    private Colas.Cola cola;
+    private int productores;
+    private int consumidores;
+    private ExecutorService ejecutor;
+
+    // hilos es "PxC": productores x consumidores
+    void preparar(String buffer, String hilos) {
+        candidato = Colas.candidato(buffer);
+        String[] partes = hilos.split("x");
+        productores = Integer.parseInt(partes[0]);
+        consumidores = Integer.parseInt(partes[1]);
+        if (candidato.soloUnoAUno && (productores != 1 || consumidores != 1)) {
+            throw new IllegalArgumentException(buffer + " solo admite hilos=1x1");
+        }
+        // Cada invocación retira todo lo que deposita, así que el buffer se
+        // reutiliza entre invocaciones
+        cola = candidato.fabrica.apply(capacidad);
+        ejecutor = Executors.newFixedThreadPool(productores + consumidores);
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        ejecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERACIONES)
+    public float transferir() throws Exception {
+        List<Future<Float>> tareas = new ArrayList<>(productores + consumidores);
+        for (int p = 0; p < productores; p++) {
+            long cuota = reparto(OPERACIONES, productores, p);
+            tareas.add(ejecutor.submit(() -> {
+                Colas.producir(cola, candidato.porLotes, cuota);
+                return 0f;
+            }));
+        }
+        for (int c = 0; c < consumidores; c++) {
+            long cuota = reparto(OPERACIONES, consumidores, c);
+            tareas.add(ejecutor.submit(() -> Colas.consumir(cola, candidato.porLotes, cuota)));
+        }
+        float suma = 0;
+        for (Future<Float> tarea : tareas) {
+            suma += tarea.get();
+        }
+        return suma;
+    }
+
+    // Parte i de total entre partes hilos; la primera se lleva el sobrante
+    static long reparto(long total, int partes, int i) {
+        return total / partes + (i == 0 ? total % partes : 0);
+    }
+}